@@ -0,0 +1,148 @@
+package de.kathrin.angebote.utlis;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import de.kathrin.angebote.models.Offer;
+import de.kathrin.angebote.models.OfferList;
+
+import static de.kathrin.angebote.utlis.Strings.PROJECT_NAME;
+import static de.kathrin.angebote.utlis.Strings.UTF8;
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark (runs on a device, the results are logged): file size and restore time of the
+ * binary offer cache, compared with the former JSON text file (read line by line, parsed with
+ * org.json and Html.fromHtml for every description). A restore reads every text once, like
+ * the offer list does when it is shown.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class OfferCacheBenchmark {
+
+    private static final String LOG_TAG = PROJECT_NAME + OfferCacheBenchmark.class.getSimpleName();
+
+    // A market has some hundred offers, the last one is far above
+    private static final int[] OFFER_COUNTS = {300, 1000, 10000};
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void compareWithJsonFile() throws IOException {
+        File dir = InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir();
+
+        for (int count : OFFER_COUNTS) {
+            OfferList offerList = OfferUtils.createOfferListFromStream(new ByteArrayInputStream(
+                    OfferParseBenchmark.createFeed(count, new Random(count))));
+
+            File binary = File.createTempFile("offers", ".bin", dir);
+            File json = File.createTempFile("offers", ".txt", dir);
+            try {
+                writeBinaryFile(binary, offerList);
+                writeJsonFile(json, offerList);
+
+                // The first restore after writing, then the best of some more
+                long binaryFirst = timeRestore(binary, false, count);
+                long jsonFirst = timeRestore(json, true, count);
+                long binaryBest = Long.MAX_VALUE;
+                long jsonBest = Long.MAX_VALUE;
+                for (int round = 0; round < ROUNDS; round++) {
+                    binaryBest = Math.min(binaryBest, timeRestore(binary, false, count));
+                    jsonBest = Math.min(jsonBest, timeRestore(json, true, count));
+                }
+
+                Log.i(LOG_TAG, count + " offers: binary " + binary.length() / 1024 + " KB, " +
+                        "restore " + binaryFirst / 1000000 + " ms (best " + binaryBest / 1000000 +
+                        " ms) | JSON " + json.length() / 1024 + " KB, restore " +
+                        jsonFirst / 1000000 + " ms (best " + jsonBest / 1000000 + " ms)");
+            } finally {
+                binary.delete();
+                json.delete();
+            }
+        }
+    }
+
+
+    // HELPER FUNCTIONS
+
+    /**
+     * Restore the offers of a file and read every text.
+     * @param file      file to restore
+     * @param json      true if it is a file of the former JSON format
+     * @param count     number of offers in the file
+     * @return          restore time (ns)
+     */
+    private static long timeRestore(File file, boolean json, int count) throws IOException {
+        System.gc();
+        long start = System.nanoTime();
+
+        OfferList offerList;
+        if (json) {
+            InputStream stream = new FileInputStream(file);
+            try {
+                offerList = OfferParseBenchmark.parseWithJsonObject(stream);
+            } finally {
+                stream.close();
+            }
+        } else {
+            offerList = OfferCacheFile.map(file);
+        }
+        int length = 0;
+        for (Offer o : offerList) {
+            length += o.getTitle().length() + o.getDescription().length();
+        }
+
+        long time = System.nanoTime() - start;
+        assertEquals(count, offerList.size());
+        assertTrue(length > 0);
+        return time;
+    }
+
+    private static void writeBinaryFile(File file, OfferList offerList) throws IOException {
+        OutputStream stream = new FileOutputStream(file);
+        try {
+            OfferCacheFile.write(stream, offerList, OfferStore.createIds(offerList), 1);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Write the offers like the former createJSONStringFromOffersList did.
+     */
+    private static void writeJsonFile(File file, OfferList offerList) throws IOException {
+        StringBuilder jsonString = new StringBuilder("{\"docs\":[");
+        for (Offer o : offerList) {
+            jsonString.append("{\"titel\":\"").append(o.getTitle().replace("\"", "\\\""))
+                    .append("\",\"preis\":").append(o.getPrice())
+                    .append(",\"beschreibung\":\"").append(o.getDescription().replace("\"", "\\\""))
+                    .append("\",\"bild_app\":\"").append(o.getImageUrl())
+                    .append("\"},");
+        }
+        jsonString.append("]");
+        jsonString.append(", \"gueltig_von\":").append(offerList.getAvailableFromTime());
+        jsonString.append(", \"gueltig_bis\":").append(offerList.getAvailableUntilTime());
+        jsonString.append("}");
+
+        OutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(jsonString.toString().getBytes(UTF8));
+        } finally {
+            stream.close();
+        }
+    }
+}
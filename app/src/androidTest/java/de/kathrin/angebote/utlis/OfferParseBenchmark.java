@@ -0,0 +1,296 @@
+package de.kathrin.angebote.utlis;
+
+import android.text.Html;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Date;
+import java.util.Random;
+
+import de.kathrin.angebote.models.Offer;
+import de.kathrin.angebote.models.OfferList;
+
+import static de.kathrin.angebote.utlis.Strings.PROJECT_NAME;
+import static de.kathrin.angebote.utlis.Strings.UTF8;
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark (runs on a device, the results are logged): parse time and peak heap of the
+ * streaming offer parser, compared with the former parse (the whole response as a string, an
+ * org.json tree on top of it and Html.fromHtml for every description), on synthetic feeds of
+ * 1k, 10k and 100k offers. Also the parse time compared with only reading the feed, and
+ * with decoding the rich text of every description while parsing (as it was done before).
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class OfferParseBenchmark {
+
+    private static final String LOG_TAG = PROJECT_NAME + OfferParseBenchmark.class.getSimpleName();
+
+    private static final int[] OFFER_COUNTS = {1000, 10000, 100000};
+    private static final int ROUNDS = 3;
+
+    // Parts of the synthetic offers
+    private static final String[] WORDS = {"Joghurt", "Erdbeer", "Vollmilch", "Käse", "Bio",
+            "Hähnchen", "Schenkel", "Müsli", "Banane", "Kaffee", "Butter", "Apfel", "Gouda",
+            "frisch", "mild", "Packung", "Becher", "Deutschland", "Spanien", "Aktion"};
+    private static final String[] MARKUP = {"<b>%s</b>", "%s<br/>", "<p>%s</p>", "%s&nbsp;",
+            "M&uuml;%s", "%s"};
+
+    @Test
+    public void compareWithJsonObject() throws IOException {
+        for (int count : OFFER_COUNTS) {
+            byte[] feed = createFeed(count, new Random(count));
+
+            long[] streaming = measure(feed, count, new Parser() {
+                @Override
+                public OfferList parse(InputStream stream) throws IOException {
+                    return OfferUtils.createOfferListFromStream(stream);
+                }
+            });
+            long[] jsonObject = measure(feed, count, new Parser() {
+                @Override
+                public OfferList parse(InputStream stream) throws IOException {
+                    return parseWithJsonObject(stream);
+                }
+            });
+
+            Log.i(LOG_TAG, count + " offers (" + feed.length / 1024 + " KB): " +
+                    "stream " + format(streaming) + " | JSONObject " + format(jsonObject));
+        }
+    }
+
+    @Test
+    public void compareDescriptionDecoding() throws IOException {
+        for (int count : OFFER_COUNTS) {
+            byte[] feed = createFeed(count, new Random(count));
+
+            long reading = measureReading(feed);
+            long[] lazy = measure(feed, count, new Parser() {
+                @Override
+                public OfferList parse(InputStream stream) throws IOException {
+                    return OfferUtils.createOfferListFromStream(stream);
+                }
+            });
+            // As before: the rich text of every description is decoded while parsing
+            long[] eager = measure(feed, count, new Parser() {
+                @Override
+                public OfferList parse(InputStream stream) throws IOException {
+                    OfferList offerList = OfferUtils.createOfferListFromStream(stream);
+                    for (int i = 0; i < offerList.size(); i++) {
+                        offerList.get(i).getDisplayDescription();
+                    }
+                    return offerList;
+                }
+            });
+
+            Log.i(LOG_TAG, count + " offers (" + feed.length / 1024 + " KB): " +
+                    "reading only " + reading / 1000000 + " ms | parse, descriptions " +
+                    "decoded when shown " + format(lazy) + " | parse, all descriptions " +
+                    "decoded " + format(eager));
+        }
+    }
+
+
+    // HELPER FUNCTIONS
+
+    interface Parser {
+        OfferList parse(InputStream stream) throws IOException;
+    }
+
+    /**
+     * Parse the feed a few times.
+     * @param feed      JSON feed
+     * @param count     number of offers in the feed
+     * @param parser    parser to measure
+     * @return          best parse time (ns) and highest peak heap (bytes) of all rounds,
+     *                  -1 if the parser ran out of memory
+     */
+    static long[] measure(byte[] feed, int count, Parser parser) throws IOException {
+        long bestTime = Long.MAX_VALUE;
+        long peakHeap = 0;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+
+            HeapSampler sampler = new HeapSampler();
+            sampler.start();
+            long start = System.nanoTime();
+            OfferList offers;
+            try {
+                offers = parser.parse(new ByteArrayInputStream(feed));
+            } catch (OutOfMemoryError e) {
+                sampler.finish();
+                return new long[]{-1, -1};
+            }
+            long time = System.nanoTime() - start;
+            long heap = sampler.finish() - heapBefore;
+
+            assertEquals(count, offers.size());
+            bestTime = Math.min(bestTime, time);
+            peakHeap = Math.max(peakHeap, heap);
+        }
+        return new long[]{bestTime, peakHeap};
+    }
+
+    /**
+     * Read the characters of the feed without parsing them, the least a parse has to do.
+     * @param feed  JSON feed
+     * @return      best time (ns) of all rounds
+     */
+    static long measureReading(byte[] feed) throws IOException {
+        long bestTime = Long.MAX_VALUE;
+        char[] buffer = new char[8192];
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            Reader reader = new InputStreamReader(new ByteArrayInputStream(feed), UTF8);
+            long chars = 0;
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                chars += read;
+            }
+            bestTime = Math.min(bestTime, System.nanoTime() - start);
+            assertTrue(chars > 0);
+        }
+        return bestTime;
+    }
+
+    /**
+     * @param result    time and peak heap, see measure
+     * @return          readable result
+     */
+    static String format(long[] result) {
+        if (result[0] < 0) {
+            return "out of memory";
+        }
+        return result[0] / 1000000 + " ms, peak " + result[1] / 1024 + " KB";
+    }
+
+    /**
+     * The former parse: the whole response as a string, an org.json tree of it, Html.fromHtml
+     * for every description.
+     * @param stream    JSON feed
+     * @return          the offers
+     */
+    static OfferList parseWithJsonObject(InputStream stream) throws IOException {
+        String jsonString = IOUtils.convertStreamToString(stream);
+        OfferList offerList = new OfferList();
+
+        try {
+            JSONObject jsonObj = new JSONObject(jsonString);
+            offerList.setAvailableFrom(new Date(jsonObj.getLong("gueltig_von")));
+            offerList.setAvailableUntil(new Date(jsonObj.getLong("gueltig_bis")));
+
+            JSONArray docs = jsonObj.getJSONArray("docs");
+            for (int i = 0; i < docs.length(); i++) {
+                JSONObject offer = docs.getJSONObject(i);
+
+                String title = offer.getString("titel").replace("\n", " ").trim();
+                Double price = offer.getDouble("preis");
+                String description = Html.fromHtml(offer.getString("beschreibung"))
+                        .toString().replace("\n", " ").trim();
+                String imageUrl = offer.getString("bild_app");
+
+                offerList.add(new Offer(title, price, description, imageUrl));
+            }
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        return offerList;
+    }
+
+    /**
+     * Create a feed in the format of the server response.
+     * @param count     number of offers
+     * @param random    source of the offer texts
+     * @return          UTF-8 bytes of the JSON feed
+     */
+    static byte[] createFeed(int count, Random random) throws IOException {
+        StringBuilder feed = new StringBuilder("{\"gueltig_von\":1600000000000,\"docs\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                feed.append(',');
+            }
+            feed.append("{\"titel\":\"").append(createText(random, 3, false))
+                    .append("\",\"preis\":").append(random.nextInt(2000) / 100.0)
+                    .append(",\"beschreibung\":\"").append(createText(random, 12, true))
+                    .append("\",\"bild_app\":\"https://example.com/bilder/").append(i)
+                    .append(".jpg\",\"kategorie\":\"").append(WORDS[random.nextInt(WORDS.length)])
+                    .append("\"}");
+        }
+        feed.append("],\"gueltig_bis\":1600600000000}");
+        return feed.toString().getBytes(UTF8);
+    }
+
+    /**
+     * Helper function for createFeed.
+     * @param random    source of the words
+     * @param words     number of words
+     * @param markup    true to put some words into tags and entities
+     * @return          the text
+     */
+    static String createText(Random random, int words, boolean markup) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (markup) {
+                word = String.format(MARKUP[random.nextInt(MARKUP.length)], word);
+            }
+            text.append(word).append(' ');
+        }
+        return text.toString().trim();
+    }
+
+    /**
+     * Polls the used heap while a parse runs and keeps the highest value.
+     */
+    private static class HeapSampler extends Thread {
+
+        private volatile boolean finished = false;
+        private long peak = 0;
+
+        @Override
+        public void run() {
+            Runtime runtime = Runtime.getRuntime();
+            while (!finished) {
+                peak = Math.max(peak, runtime.totalMemory() - runtime.freeMemory());
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Stop polling.
+         * @return  highest used heap while polling (bytes)
+         */
+        long finish() {
+            finished = true;
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Runtime runtime = Runtime.getRuntime();
+            return Math.max(peak, runtime.totalMemory() - runtime.freeMemory());
+        }
+    }
+}
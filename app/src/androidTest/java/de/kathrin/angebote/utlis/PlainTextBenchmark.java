@@ -0,0 +1,66 @@
+package de.kathrin.angebote.utlis;
+
+import android.text.Html;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static de.kathrin.angebote.utlis.Strings.PROJECT_NAME;
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark (runs on a device, the results are logged): time to turn offer descriptions into
+ * plain text with HtmlText.toPlainText, compared with Html.fromHtml as the parse did before,
+ * for 1k, 10k and 100k descriptions of the synthetic feed (see OfferParseBenchmark).
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class PlainTextBenchmark {
+
+    private static final String LOG_TAG = PROJECT_NAME + PlainTextBenchmark.class.getSimpleName();
+
+    private static final int[] DESCRIPTION_COUNTS = {1000, 10000, 100000};
+    private static final int WORDS = 12;
+    private static final int ROUNDS = 3;
+
+    @Test
+    public void compareWithFromHtml() {
+        for (int count : DESCRIPTION_COUNTS) {
+            Random random = new Random(count);
+            String[] descriptions = new String[count];
+            for (int i = 0; i < count; i++) {
+                descriptions[i] = OfferParseBenchmark.createText(random, WORDS, true);
+            }
+
+            long plainTextTime = Long.MAX_VALUE;
+            long fromHtmlTime = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                int length = 0;
+                long start = System.nanoTime();
+                for (String description : descriptions) {
+                    length += HtmlText.toPlainText(description).length();
+                }
+                plainTextTime = Math.min(plainTextTime, System.nanoTime() - start);
+
+                int fromHtmlLength = 0;
+                start = System.nanoTime();
+                for (String description : descriptions) {
+                    fromHtmlLength += Html.fromHtml(description).toString()
+                            .replace("\n", " ").trim().length();
+                }
+                fromHtmlTime = Math.min(fromHtmlTime, System.nanoTime() - start);
+
+                assertTrue(length > 0 && fromHtmlLength > 0);
+            }
+
+            Log.i(LOG_TAG, count + " descriptions: toPlainText " + plainTextTime / 1000000 +
+                    " ms | Html.fromHtml " + fromHtmlTime / 1000000 + " ms");
+        }
+    }
+}
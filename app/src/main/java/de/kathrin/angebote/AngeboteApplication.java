@@ -0,0 +1,19 @@
+package de.kathrin.angebote;
+
+import android.app.Application;
+
+import de.kathrin.angebote.utlis.HttpClient;
+
+/**
+ * Created first when the process starts, before any activity, receiver or network request.
+ */
+public class AngeboteApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // The keep-alive settings are only read when the first connection is opened
+        HttpClient.configureConnectionPool();
+    }
+}
@@ -11,6 +11,9 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.Gravity;
 import android.view.KeyEvent;
@@ -19,6 +22,7 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.EditText;
 import android.widget.ImageView;
@@ -26,23 +30,38 @@ import android.widget.LinearLayout;
 import android.widget.PopupWindow;
 import android.widget.Toast;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import de.kathrin.angebote.adapter.OfferArrayAdapter;
+import de.kathrin.angebote.database.MarketDataSource;
 import de.kathrin.angebote.models.Market;
+import de.kathrin.angebote.models.MergedOfferRanking;
 import de.kathrin.angebote.models.Offer;
+import de.kathrin.angebote.models.OfferIndex;
 import de.kathrin.angebote.models.OfferList;
+import de.kathrin.angebote.models.OfferRanking;
+import de.kathrin.angebote.utlis.HttpClient;
 import de.kathrin.angebote.utlis.LayoutUtilsMain;
+import de.kathrin.angebote.utlis.MarketFanOut;
 import de.kathrin.angebote.utlis.MarketUtils;
 import de.kathrin.angebote.utlis.OfferUtils;
 
 import static de.kathrin.angebote.utlis.Strings.EXTRA_MARKET;
+import static de.kathrin.angebote.utlis.Strings.FAVOURITE_MARKETS_HEADER;
+import static de.kathrin.angebote.utlis.Strings.NO_FAVOURITE_MARKETS;
 import static de.kathrin.angebote.utlis.Strings.NO_MARKET_SELECTED;
 import static de.kathrin.angebote.utlis.Strings.NO_OFFERS_FOUND;
 import static de.kathrin.angebote.utlis.Strings.NO_SERVER_CONNECTION;
@@ -57,10 +76,46 @@ public class MainActivity extends AppCompatActivity {
     public static final int SELECT_MARKET_REQUEST = 1;
     public static final int RESULT_OK = 0;
 
+    // Time without typing after which the search starts
+    private static final long SEARCH_DELAY_MS = 300;
+    // Number of offers added to the result list at once (more are added while scrolling)
+    private static final int RESULT_PAGE_SIZE = 30;
+    // Favourite markets searched at the same time, slower markets are left out after the deadline
+    private static final int PARALLEL_MARKET_SEARCHES = 3;
+    private static final long FAVOURITES_SEARCH_DEADLINE_MS = 15000;
+    // Searches (in the selected market or all favourite markets) run one after another on
+    // their own thread: a replaced search still loading the offers does not hold up the other
+    // tasks (e.g. the images)
+    private static final Executor SEARCH_EXECUTOR = Executors.newSingleThreadExecutor();
+
     private OfferList allOffersList = null;
     private final List<Offer> resultOfferList = new ArrayList<>();
+    private OfferArrayAdapter offerArrayAdapter = null;
+    // Offers of the result that are not in the result list yet
+    private OfferRanking resultRanking = null;
     private Market selectedMarket = null;
 
+    // Only the result of the latest search is shown, the result narrows the next search
+    private RequestOffersTask searchTask = null;
+    private OfferIndex.Result lastSearchResult = null;
+
+    // Search in all favourite markets instead of the selected market
+    private boolean searchFavourites = false;
+    private SearchFavouritesTask favouritesSearchTask = null;
+    // Offers and result of the last search of the favourite markets, by market ID
+    private final Map<String, OfferList> favouriteOffers = new ConcurrentHashMap<>();
+    private final Map<String, OfferIndex.Result> lastFavouriteResults = new HashMap<>();
+    // Offers of all favourite markets that are not in the result list yet
+    private MergedOfferRanking favouriteRanking = null;
+
+    private final Handler searchHandler = new Handler();
+    private final Runnable delayedSearch = new Runnable() {
+        @Override
+        public void run() {
+            startSearch(false);
+        }
+    };
+
     private LayoutUtilsMain lu;
 
     /**
@@ -118,16 +173,34 @@ public class MainActivity extends AppCompatActivity {
 
     /**
      * Start the offer search on button or enter click in a new {@link RequestOffersTask} instance.
+     * While typing, the search starts when there was no input for SEARCH_DELAY_MS.
      */
     @SuppressLint("ClickableViewAccessibility")
     private void initOfferSearch() {
 
+        // Search while typing, restart the delay with every change
+        lu.OFFER_SEARCH_FIELD_VIEW.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                searchHandler.removeCallbacks(delayedSearch);
+                searchHandler.postDelayed(delayedSearch, SEARCH_DELAY_MS);
+            }
+        });
+
         // Start the search for offers, when enter is clicked
         lu.OFFER_SEARCH_FIELD_VIEW.setOnKeyListener(new View.OnKeyListener() {
             public boolean onKey(View view, int keyCode, KeyEvent keyevent) {
                 //If the keyEvent is a key-down event on the "enter" button
                 if ((keyevent.getAction() == KeyEvent.ACTION_DOWN) && (keyCode == KeyEvent.KEYCODE_ENTER)) {
-                    startSearch();
+                    startSearch(true);
                     return true;
                 }
                 return false;
@@ -142,7 +215,7 @@ public class MainActivity extends AppCompatActivity {
             public boolean onTouch(View v, MotionEvent event) {
                 if(event.getAction() == MotionEvent.ACTION_UP) {
                     if(event.getRawX() + 50 >= (editText.getRight() - editText.getCompoundDrawables()[2].getBounds().width())) {
-                        startSearch();
+                        startSearch(true);
                         return true;
                     }
                 }
@@ -154,11 +227,40 @@ public class MainActivity extends AppCompatActivity {
 
     /**
      * Get search item from text field and start the search in a new {@link RequestOffersTask}
-     * instance.
+     * instance. A search that is still running is cancelled.
+     * @param submitted true if the search was started by the user (enter or arrow), false if
+     *                  it was started while typing
      */
-    private void startSearch() {
-        RequestOffersTask offersTask = new RequestOffersTask();
-        offersTask.execute(lu.OFFER_SEARCH_FIELD_VIEW.getText().toString());
+    private void startSearch(boolean submitted) {
+        searchHandler.removeCallbacks(delayedSearch);
+        cancelSearch();
+
+        String searchItem = lu.OFFER_SEARCH_FIELD_VIEW.getText().toString();
+        if (searchFavourites) {
+            favouritesSearchTask = new SearchFavouritesTask(submitted,
+                    new HashMap<>(lastFavouriteResults));
+            favouritesSearchTask.executeOnExecutor(SEARCH_EXECUTOR, searchItem);
+        } else {
+            searchTask = new RequestOffersTask(selectedMarket, allOffersList, submitted,
+                    lastSearchResult);
+            searchTask.executeOnExecutor(SEARCH_EXECUTOR, searchItem);
+        }
+    }
+
+    /**
+     * Cancel the running search, its result is not shown.
+     */
+    private void cancelSearch() {
+        if (searchTask != null) {
+            searchTask.cancel(false);
+            searchTask = null;
+        }
+        if (favouritesSearchTask != null) {
+            // Interrupted, so it stops waiting for the markets and the next search can start
+            // (the requests of the markets go on, see OfferUtils.requestOffersFromServer)
+            favouritesSearchTask.cancel(true);
+            favouritesSearchTask = null;
+        }
     }
 
     /**
@@ -187,16 +289,32 @@ public class MainActivity extends AppCompatActivity {
     private void initListView() {
 
         // Bind Adapter to List View
-        OfferArrayAdapter offerArrayAdapter = new OfferArrayAdapter(this, resultOfferList);
+        offerArrayAdapter = new OfferArrayAdapter(this, resultOfferList);
         lu.OFFER_RESULT_LIST_VIEW.setAdapter(offerArrayAdapter);
 
+        // Add the next offers of the result, when the end of the list is reached
+        lu.OFFER_RESULT_LIST_VIEW.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+                                 int totalItemCount) {
+                if (firstVisibleItem + visibleItemCount >= totalItemCount - RESULT_PAGE_SIZE / 2) {
+                    showMoreOffers();
+                }
+            }
+        });
+
         // Add pop-up with description when clicking on an offer.
         registerListViewClickListener();
     }
 
     /**
      * Automatically called when leaving the activity.
-     * Saves the current market in a file.
+     * Saves the current market in a file and starts writing the received offers that are not
+     * written yet (without waiting for them).
      */
     @Override
     protected void onStop() {
@@ -206,6 +324,23 @@ public class MainActivity extends AppCompatActivity {
         if (selectedMarket != null) {
             MarketUtils.saveMarketToFile(this, selectedMarket);
         }
+
+        OfferUtils.startOfferFlush(this);
+    }
+
+    /**
+     * Automatically called when the system is low on memory or the app is in the background.
+     * Starts writing the received offers that are not written yet, the process may be killed
+     * soon.
+     * @param level kind of memory trim
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            OfferUtils.startOfferFlush(this);
+        }
     }
 
     /**
@@ -234,6 +369,14 @@ public class MainActivity extends AppCompatActivity {
             Intent intent = new Intent(this, NotificationActivity.class);
             startActivity(intent);
 
+            return true;
+        } else if (item.getItemId() == R.id.menu_search_favourites) {
+            // Switch between the selected market and all favourite markets
+            searchFavourites = !item.isChecked();
+            item.setChecked(searchFavourites);
+            Log.v(LOG_TAG, "Search in all favourite markets: " + searchFavourites);
+
+            startSearch(false);
             return true;
         } else {
             return super.onOptionsItemSelected(item);
@@ -260,7 +403,11 @@ public class MainActivity extends AppCompatActivity {
                 }
 
                 // Delete old offers
+                cancelSearch();
                 allOffersList = null;
+                lastSearchResult = null;
+                resultRanking = null;
+                favouriteRanking = null;
 
                 // Clear list view
                 resultOfferList.clear();
@@ -281,7 +428,7 @@ public class MainActivity extends AppCompatActivity {
             public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
                 // Get the information from offer object
                 String title = resultOfferList.get(position).getTitle();
-                String description = resultOfferList.get(position).getDescription();
+                CharSequence description = resultOfferList.get(position).getDisplayDescription();
                 String urlString = resultOfferList.get(position).getImageUrl();
 
                 // Set up the popup
@@ -321,8 +468,9 @@ public class MainActivity extends AppCompatActivity {
     /**
      * Update result header and offer list.
      * @param offerList new offers to show in the result
+     * @param ranking   further offers of the result, added while scrolling (or null)
      */
-    protected void updateListView(List<Offer> offerList) {
+    protected void updateListView(List<Offer> offerList, OfferRanking ranking) {
         Log.v(LOG_TAG, "Updating view");
 
         // Set Header with available dates
@@ -336,79 +484,173 @@ public class MainActivity extends AppCompatActivity {
         // Update result offer list
         resultOfferList.clear();
         resultOfferList.addAll(offerList);
+        resultRanking = ranking;
+        favouriteRanking = null;
 
         // Update list view
         lu.OFFER_RESULT_LIST_VIEW.invalidateViews();
     }
 
+    /**
+     * Add the next offers of the result to the result list (while scrolling).
+     */
+    private void showMoreOffers() {
+        int count = resultOfferList.size();
+
+        if (resultRanking != null && resultRanking.hasNext()) {
+            resultOfferList.addAll(resultRanking.next(RESULT_PAGE_SIZE));
+        }
+        if (favouriteRanking != null && favouriteRanking.hasNext()) {
+            resultOfferList.addAll(favouriteRanking.next(RESULT_PAGE_SIZE));
+        }
+
+        if (resultOfferList.size() > count) {
+            offerArrayAdapter.notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Restore the offers of a market from file or make a server request to load them.
+     * Outdated offers from file are only used, if the server has no newer offers.
+     * (Called in the background.)
+     * @param market    market of the offers
+     * @return          the offers, null if there are none
+     * @throws IOException  if the server request failed
+     */
+    private OfferList loadOffers(Market market) throws IOException {
+        OfferList outdatedOffersList = null;
+
+        if (!OfferUtils.isOfferFileOutdated(this, market)) {
+            OfferList offerList = OfferUtils.restoreOffersFromFile(this, market);
+            if (offerList != null && !offerList.getAvailableUntil().before(new Date())) {
+                return offerList;
+            }
+
+            // Kept in case the server has no newer offers
+            if (offerList != null) {
+                Log.v(LOG_TAG, "Offers from file outdated");
+                outdatedOffersList = offerList;
+            }
+        }
+
+        return OfferUtils.requestOffersFromServer(this, market, outdatedOffersList);
+    }
+
+    /**
+     * Search in the offers of a market. If nothing is found, offers with similar words are
+     * searched (the search item may have a typing error). (Called in the background.)
+     * @param market            market of the offers
+     * @param offerList         offers of the market
+     * @param searchItem        request string
+     * @param previousResult    result of the previous search in the market or null
+     * @return                  result of the search
+     */
+    private OfferIndex.Result searchOffers(Market market, OfferList offerList, String searchItem,
+                                           OfferIndex.Result previousResult) {
+        // sorted suffixes of the offers, restored from the file if possible
+        OfferUtils.prepareOfferSearch(this, market, offerList);
+
+        OfferIndex.Result result = offerList.getIndex().search(searchItem, previousResult);
+        if (result.size() == 0) {
+            result = offerList.getIndex().searchSimilar(searchItem);
+        }
+        return result;
+    }
+
     /**
      *  PRIVATE CLASS REQUEST-OFFERS-TASK
      *
      *     1. Receives the search parameter (String).
      *     2. Loads the current offers for the selected market from a file or
      *         makes a server request if necessary.
-     *     3. Collects all offers which contain the search parameter.
-     *     4. Returns a list of all requested offers.
+     *     3. Collects all offers which contain the search parameter (only checks the
+     *         offers of the previous search, if the search parameter extends its one).
+     *     4. Ranks the result and returns it, with the best offers to show first.
      *
      */
     @SuppressLint("StaticFieldLeak")
-    private class RequestOffersTask extends AsyncTask<String, String, List<Offer>> {
+    private class RequestOffersTask extends AsyncTask<String, String, OfferIndex.Result> {
+        private final Market market;
+        private final boolean submitted;
+        private final OfferIndex.Result previousResult;
+
+        // Offers of the market, loaded in the background if they were not loaded yet. Only
+        // handed to the activity on the main thread, if the market is still selected.
+        private OfferList offerList;
+
+        // Best offers of the result, ranked in the background
+        private OfferRanking ranking = null;
+        private List<Offer> firstOffers = null;
+
+        /**
+         * Constructor
+         * @param market            market to search in (the selected one) or null
+         * @param offerList         offers of the market or null if they are not loaded yet
+         * @param submitted         true if the user started the search, then it also
+         *                          informs if nothing was found
+         * @param previousResult    result of the previous search or null
+         */
+        RequestOffersTask (Market market, OfferList offerList, boolean submitted,
+                           OfferIndex.Result previousResult) {
+            this.market = market;
+            this.offerList = offerList;
+            this.submitted = submitted;
+            this.previousResult = previousResult;
+        }
 
         /**
          * First load all offers of the selected market. (If there are not there, look
          * in the file or make a server request.)
          * Then search in the offers for offers matching the request string. Return those.
          * @param searchItem request string
-         * @return list of offers matching the request string
+         * @return result with the offers matching the request string, null if there are no offers
          */
         @Override
-        protected List<Offer> doInBackground(String... searchItem) {
-            List<Offer> resultList = new ArrayList<>();
+        protected OfferIndex.Result doInBackground(String... searchItem) {
 
             // May happen when starting the app the first time.
-            if (selectedMarket == null) {
-                publishProgress(NO_MARKET_SELECTED);
-                return resultList;
-            }
-
-            // Try to restore offers from file
-            if (allOffersList == null) {
-                allOffersList = OfferUtils.restoreOffersFromFile(MainActivity.this, selectedMarket);
-
-                // Check if the file is outdated
-                if (allOffersList != null && allOffersList.getAvailableUntil().before(new Date())) {
-                    Log.v(LOG_TAG, "Offers from file outdated");
-                    allOffersList = null;
+            if (market == null) {
+                if (submitted) {
+                    publishProgress(NO_MARKET_SELECTED);
                 }
+                return null;
             }
 
-            // Try to make a server request to load offers
-            if (allOffersList == null) {
+            // Restore offers from file or make a server request to load them
+            if (offerList == null) {
 
                 try {
-                    allOffersList = OfferUtils.requestOffersFromServer(MainActivity.this, selectedMarket);
+                    offerList = loadOffers(market);
                 } catch (IOException e) {
                     Log.e(LOG_TAG, "IOException: " + e.getMessage());
                     publishProgress(NO_SERVER_CONNECTION);
-                    return resultList;
+                    return null;
                 }
             }
 
-            String requestString = searchItem[0].toLowerCase().trim();
+            if (offerList == null) {
+                publishProgress(NO_SERVER_CONNECTION);
+                return null;
+            }
 
-            // collect all matching offers
-            for (Offer o: allOffersList) {
-                if (o.getTitle().toLowerCase().contains(requestString) ||
-                    o.getDescription().toLowerCase().contains(requestString)) {
-                    resultList.add(o);
-                }
+            // A newer search was started in the meantime
+            if (isCancelled()) {
+                return null;
             }
 
-            if (resultList.isEmpty()) {
+            // collect all matching offers (from the offer index)
+            OfferIndex.Result result =
+                    searchOffers(market, offerList, searchItem[0], previousResult);
+
+            if (submitted && result.size() == 0) {
                 publishProgress(NO_OFFERS_FOUND);
             }
 
-            return resultList;
+            // only the best offers are sorted, the others when the user scrolls to them
+            ranking = result.getRanking();
+            firstOffers = ranking.next(RESULT_PAGE_SIZE);
+
+            return result;
         }
 
         /**
@@ -423,17 +665,233 @@ public class MainActivity extends AppCompatActivity {
 
         /**
          * Return the matching offers to the main activity, if there are any.
-         * @param receivedOfferList matching offers found
+         * (Not called, if the search was cancelled.)
+         * @param result    result of the search, null if there are no offers
          */
         @Override
-        protected void onPostExecute(List<Offer> receivedOfferList) {
+        protected void onPostExecute(OfferIndex.Result result) {
+            keepOffers();
+
+            // Only the latest search shows its result
+            if (searchTask != this) {
+                return;
+            }
+            searchTask = null;
+
             // using result from doInBackground() function as parameter
-            if (allOffersList != null) {
-                updateListView(receivedOfferList);
+            if (result != null && allOffersList == offerList) {
+                lastSearchResult = result;
+                updateListView(firstOffers, ranking);
+            }
+        }
+
+        /**
+         * A replaced search still keeps the offers it loaded for the next searches.
+         * @param result    ignored
+         */
+        @Override
+        protected void onCancelled(OfferIndex.Result result) {
+            keepOffers();
+        }
+
+        /**
+         * Helper function. Hand the loaded offers to the activity (on the main thread), if the
+         * market is still selected and its offers are not loaded yet.
+         */
+        private void keepOffers() {
+            if (offerList != null && market == selectedMarket && allOffersList == null) {
+                allOffersList = offerList;
             }
         }
     }
-    
+
+    /**
+     * Result of the search in one of the favourite markets.
+     */
+    private static class MarketResult {
+        final Market market;
+        final OfferIndex.Result result;
+        final OfferRanking ranking;
+
+        MarketResult(Market market, OfferIndex.Result result, OfferRanking ranking) {
+            this.market = market;
+            this.result = result;
+            this.ranking = ranking;
+        }
+    }
+
+    /**
+     *  PRIVATE CLASS SEARCH-FAVOURITES-TASK
+     *
+     *     1. Receives the search parameter (String).
+     *     2. Loads the favourite markets from the database.
+     *     3. Loads the offers of several markets at the same time (from a file or, if
+     *         necessary, with a server request) and searches in them.
+     *     4. Merges the best offers of every market into the result list as soon as the
+     *         market is done, marked with the market.
+     *
+     */
+    @SuppressLint("StaticFieldLeak")
+    private class SearchFavouritesTask extends AsyncTask<String, MarketResult, Integer> {
+        private final boolean submitted;
+        private final Map<String, OfferIndex.Result> previousResults;
+
+        // Number of markets done and of offers found so far
+        private int marketsDone = 0;
+        private int offersFound = 0;
+
+        /**
+         * Constructor
+         * @param submitted         true if the user started the search, then it also
+         *                          informs if nothing was found
+         * @param previousResults   results of the previous search, by market ID
+         */
+        SearchFavouritesTask (boolean submitted, Map<String, OfferIndex.Result> previousResults) {
+            this.submitted = submitted;
+            this.previousResults = previousResults;
+        }
+
+        /**
+         * Search in all favourite markets, every market is published when it is done.
+         * @param searchItem request string
+         * @return number of favourite markets
+         */
+        @Override
+        protected Integer doInBackground(final String... searchItem) {
+
+            // Load all favourite markets
+            MarketDataSource marketDataSource = new MarketDataSource(MainActivity.this);
+            marketDataSource.open();
+            List<Market> marketList = marketDataSource.getAllFavouriteMarkets();
+            marketDataSource.close();
+
+            MarketFanOut<MarketResult> fanOut =
+                    new MarketFanOut<>(PARALLEL_MARKET_SEARCHES, FAVOURITES_SEARCH_DEADLINE_MS);
+
+            fanOut.runAll(marketList, new MarketFanOut.MarketTask<MarketResult>() {
+                @Override
+                public MarketResult run(Market market) throws IOException {
+                    return searchMarket(market, searchItem[0]);
+                }
+            }, new MarketFanOut.Listener<MarketResult>() {
+                @Override
+                public void onMarketDone(Market market, MarketResult result) {
+                    if (result != null && !isCancelled()) {
+                        publishProgress(result);
+                    }
+                }
+            });
+
+            return marketList.size();
+        }
+
+        /**
+         * Load the offers of a market (kept for the next search) and search in them.
+         * (Called on the threads of the fan-out.)
+         * @param market        market to search in
+         * @param searchItem    request string
+         * @return              result of the market, null if the search was cancelled
+         * @throws IOException  if the offers could not be loaded
+         */
+        private MarketResult searchMarket(Market market, String searchItem) throws IOException {
+            if (isCancelled()) {
+                return null;
+            }
+
+            OfferList offerList = favouriteOffers.get(market.getMarketID());
+            if (offerList == null || offerList.getAvailableUntil().before(new Date())) {
+                offerList = loadOffers(market);
+                if (offerList == null) {
+                    throw new IOException("No offers received");
+                }
+                favouriteOffers.put(market.getMarketID(), offerList);
+            }
+
+            if (isCancelled()) {
+                return null;
+            }
+
+            OfferIndex.Result result = searchOffers(market, offerList, searchItem,
+                    previousResults.get(market.getMarketID()));
+            // the offers are rated here, only the best ones are selected on the main thread
+            OfferRanking ranking = result.getRanking();
+            ranking.prepare();
+            return new MarketResult(market, result, ranking);
+        }
+
+        /**
+         * Merge the best offers of a market that is done into the result list, the list is
+         * merged again from the best offer (at least as many offers as shown before).
+         * The offers of the previous search are replaced, when the first market is done.
+         * @param marketResults result of the market
+         */
+        @Override
+        protected void onProgressUpdate(MarketResult... marketResults) {
+            // Only the latest search shows its result
+            if (favouritesSearchTask != this) {
+                return;
+            }
+
+            if (marketsDone == 0) {
+                clearListView();
+            }
+
+            for (MarketResult r : marketResults) {
+                marketsDone++;
+                offersFound += r.result.size();
+
+                lastFavouriteResults.put(r.market.getMarketID(), r.result);
+                favouriteRanking.add(r.market, r.ranking);
+            }
+
+            int count = Math.max(resultOfferList.size(), RESULT_PAGE_SIZE);
+            favouriteRanking.restart();
+            resultOfferList.clear();
+            resultOfferList.addAll(favouriteRanking.next(count));
+            offerArrayAdapter.notifyDataSetChanged();
+        }
+
+        /**
+         * Inform if nothing was found, when all markets are done.
+         * (Not called, if the search was cancelled.)
+         * @param marketCount   number of favourite markets
+         */
+        @Override
+        protected void onPostExecute(Integer marketCount) {
+            if (favouritesSearchTask != this) {
+                return;
+            }
+            favouritesSearchTask = null;
+
+            // No market is done, the offers of the previous search are not shown anymore
+            if (marketsDone == 0) {
+                clearListView();
+                offerArrayAdapter.notifyDataSetChanged();
+            }
+
+            if (!submitted) {
+                return;
+            }
+            if (marketCount == 0) {
+                Toast.makeText(getApplicationContext(), NO_FAVOURITE_MARKETS, Toast.LENGTH_SHORT).show();
+            } else if (marketsDone == 0) {
+                Toast.makeText(getApplicationContext(), NO_SERVER_CONNECTION, Toast.LENGTH_SHORT).show();
+            } else if (offersFound == 0) {
+                Toast.makeText(getApplicationContext(), NO_OFFERS_FOUND, Toast.LENGTH_SHORT).show();
+            }
+        }
+
+        /**
+         * Helper function. Empty the result list for the offers of the favourite markets.
+         */
+        private void clearListView() {
+            lu.OFFER_RESULT_HEADER_VIEW.setText(FAVOURITE_MARKETS_HEADER);
+            resultOfferList.clear();
+            resultRanking = null;
+            favouriteRanking = new MergedOfferRanking(RESULT_PAGE_SIZE);
+        }
+    }
+
     /**
      * PRIVATE CLASS DOWNLOAD-IMAGE-TASK
      *
@@ -468,10 +926,23 @@ public class MainActivity extends AppCompatActivity {
             Bitmap bMap = null;
 
             try {
-                // Load image
+                // Load image (over the shared client, to reuse the connection)
                 URL url = new URL(urlString);
-                InputStream in = url.openStream();
-                bMap = BitmapFactory.decodeStream(in);
+                HttpURLConnection conn = HttpClient.getInstance().openConnection(url);
+                boolean reusable = false;
+                try {
+                    InputStream in = new BufferedInputStream(conn.getInputStream());
+                    try {
+                        bMap = BitmapFactory.decodeStream(in);
+
+                        // The decoder may stop in front of the end of the response
+                        reusable = HttpClient.readToEnd(in);
+                    } finally {
+                        in.close();
+                    }
+                } finally {
+                    HttpClient.getInstance().releaseConnection(conn, reusable);
+                }
 
                 // Resize to the correct format
                 int newImageHeight = 600;
@@ -13,6 +13,7 @@ import androidx.annotation.Nullable;
 
 import java.util.List;
 
+import de.kathrin.angebote.models.MarketOffer;
 import de.kathrin.angebote.models.Offer;
 import de.kathrin.angebote.R;
 
@@ -68,9 +69,19 @@ public class OfferArrayAdapter extends ArrayAdapter<Offer> {
         // Assign the title and price to the text views
         tvTitle.setText(currentOffer.getTitle());
 
-        @SuppressLint("DefaultLocale")
-        String price = String.format(PRICE_FORMAT, currentOffer.getPrice()) + EURO;
-        tvPrice.setText(price);
+        // Offers without a price only show the title
+        if (currentOffer.getPrice() != null) {
+            @SuppressLint("DefaultLocale")
+            String price = String.format(PRICE_FORMAT, currentOffer.getPrice()) + EURO;
+            tvPrice.setText(price);
+        }
+
+        // Show the market, if the offers come from several markets
+        if (currentOffer instanceof MarketOffer) {
+            final TextView tvMarket = rowView.findViewById(R.id.offer_item_market);
+            tvMarket.setText(((MarketOffer) currentOffer).getMarket().getName());
+            tvMarket.setVisibility(View.VISIBLE);
+        }
 
         return rowView;
     }
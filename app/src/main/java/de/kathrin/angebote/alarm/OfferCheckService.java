@@ -0,0 +1,183 @@
+package de.kathrin.angebote.alarm;
+
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.JobIntentService;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import de.kathrin.angebote.database.MarketDataSource;
+import de.kathrin.angebote.database.ProductDataSource;
+import de.kathrin.angebote.models.Market;
+import de.kathrin.angebote.models.Offer;
+import de.kathrin.angebote.models.OfferList;
+import de.kathrin.angebote.utlis.MarketFanOut;
+import de.kathrin.angebote.utlis.OfferUtils;
+import de.kathrin.angebote.utlis.TransferStats;
+import de.kathrin.angebote.utlis.WatchlistMatcher;
+
+import static de.kathrin.angebote.utlis.Strings.PROJECT_NAME;
+
+/**
+ * Checks if the products are on offer in the favourite markets and creates a notification for
+ * every market with offers (started by the {@link AlarmReceiver}). Runs as a job: loading the
+ * offers of all markets may take longer than the system allows a receiver (about ten seconds).
+ */
+public class OfferCheckService extends JobIntentService {
+
+    private static final String LOG_TAG = PROJECT_NAME + OfferCheckService.class.getSimpleName();
+
+    private static final int JOB_ID = 1;
+
+    // Number of markets checked at the same time
+    private static final int PARALLEL_MARKET_CHECKS = 3;
+    // Time after which the check is stopped (the system allows a job about ten minutes)
+    private static final long CHECK_DEADLINE_MS = 50 * 1000;
+    // Time to write the received offers into the files after the check
+    private static final long FLUSH_TIMEOUT_MS = 5 * 1000;
+
+    /**
+     * Start the check in the background.
+     * @param context   current context
+     */
+    static void enqueueWork(Context context) {
+        enqueueWork(context, OfferCheckService.class, JOB_ID,
+                new Intent(context, OfferCheckService.class));
+    }
+
+    /**
+     * Check all markets (on the background thread of the job). When all markets are done (or
+     * the deadline passed), the new alarm is set once.
+     * @param intent    not used
+     */
+    @Override
+    protected void onHandleWork(@NonNull Intent intent) {
+        boolean validInternetConnection = false;
+        try {
+            validInternetConnection = checkAllMarkets();
+        } finally {
+            // The process may be stopped after the job, write the offers now
+            OfferUtils.flushOfferWrites(this, FLUSH_TIMEOUT_MS);
+
+            // Show how much the compression saved
+            TransferStats.logSummary();
+
+            AlarmReceiver.setNewAlarm(this, validInternetConnection);
+        }
+    }
+
+    /**
+     * Helper function for onHandleWork. Load the products and markets and check every market
+     * for the products (a {@link CheckOffersTask} for every market in parallel). Notify about
+     * the offers found in each market.
+     * @return  false if the offers of a market could not be loaded in time
+     */
+    private boolean checkAllMarkets () {
+
+        // Load all products of interest
+        ProductDataSource productDataSource = new ProductDataSource(this);
+        productDataSource.open();
+        List<String> productList = productDataSource.getAllProductsFromDatabase();
+        productDataSource.close();
+
+        // Load all favourite markets
+        MarketDataSource marketDataSource = new MarketDataSource(this);
+        marketDataSource.open();
+        List<Market> marketList = marketDataSource.getAllFavouriteMarkets();
+        marketDataSource.close();
+
+        // Go through all markets and check for products on offer
+        MarketFanOut<List<Offer>> fanOut =
+                new MarketFanOut<>(PARALLEL_MARKET_CHECKS, CHECK_DEADLINE_MS);
+
+        Map<Market, List<Offer>> results = fanOut.runAll(marketList,
+                new CheckOffersTask(new WatchlistMatcher(productList)),
+                new MarketFanOut.Listener<List<Offer>>() {
+                    @Override
+                    public void onMarketDone(Market market, List<Offer> offers) {
+                        if (!offers.isEmpty()) {
+                            notifyAboutOffers(market, offers);
+                        }
+                    }
+                });
+
+        // Markets are missing, if they could not be loaded in time -> try again soon
+        if (results.size() < marketList.size()) {
+            Log.v(LOG_TAG, "No valid internet connection");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Create the title and the content of a new notification and send it to the
+     * {@link NotificationController}.
+     * @param market    Market where the products are on offer
+     * @param offers    Products on offer.
+     */
+    private void notifyAboutOffers (Market market, List<Offer> offers) {
+        NotificationController nc = new NotificationController(this);
+
+        String title = "Neue Angebote im " + market.getName() + "!";
+
+        StringBuilder content = new StringBuilder();
+        for (Offer o: offers) {
+            content.append("- ")
+                    .append(o.getTitle())
+                    .append("\n");
+        }
+
+        // Show new notification
+        nc.addNewNotification(title, content.toString());
+    }
+
+    /*******************************************************************************************
+     PRIVATE CLASS CHECK-OFFERS-TASK
+     1. Get the matcher of the product list
+     2. Load the offers of a market from the server
+     3. Go once through the offers to find the ones matching any product
+     4. Return a list with all offers that match the product list.
+     ********************************************************************************************/
+    private class CheckOffersTask implements MarketFanOut.MarketTask<List<Offer>> {
+        private final WatchlistMatcher products;
+
+        /**
+         * Constructor, saves the product list
+         * @param products  matcher of the products to compare with the offers in the markets
+         *                  (compiled once for all markets)
+         */
+        CheckOffersTask (WatchlistMatcher products) {
+            this.products = products;
+        }
+
+        /**
+         * Load the offers from the given market and look for matching products (compare with
+         * the products in the product list).
+         * @param market    market which offers are compared
+         * @return  list of matching offers
+         * @throws IOException  if the offers could not be loaded
+         */
+        @Override
+        public List<Offer> run(Market market) throws IOException {
+            Log.v(LOG_TAG, "Checking market: " + market);
+
+            // Try to load the offers from the server
+            OfferList offerList = OfferUtils.requestOffersFromServer(OfferCheckService.this, market);
+
+            if (offerList == null) {
+                throw new IOException("No offers received");
+            }
+
+            // collect all offers matching any product
+            List<Offer> resultList = products.findOffers(offerList);
+
+            //Log.v(LOG_TAG, "Results: " + resultList);
+            return resultList;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package de.kathrin.angebote.models;
+
+/**
+ * OfferList that keeps the values of its offers in the {@link OfferPool} instead of one object
+ * per offer: the prices in cents and all strings (title, description, image URL and their
+ * normalized forms) are stored in a few arrays shared by all markets, so an offer sold in
+ * several markets is only stored once. The list only keeps the slots of its offers.
+ * {@link #get(int)} returns a new small view on the values of the offer on every call, the list
+ * keeps none of them: the search reads the values by position ({@link #getTitleKey(int)},
+ * {@link #getPriceCents(int)}), so views are only created for the offers that are shown.
+ *
+ * Offers can only be added at the end, by one thread before the list is shared.
+ * Only the offers received from the server are put into such a list, restored ones are not
+ * pooled (see {@link OfferPool}).
+ */
+public class ColumnarOfferList extends OfferList {
+
+    // Segment of the pool keeping the offers (the same one for the whole list), and the
+    // slots of the offers in it
+    private final OfferPool.Segment segment;
+    private final OfferPool.ListSlots slots;
+
+    public ColumnarOfferList() {
+        slots = OfferPool.getInstance().register(this);
+        segment = slots.segment;
+    }
+
+    // LIST ACCESS
+
+    @Override
+    public Offer get(int index) {
+        if (index < 0 || index >= slots.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + slots.size);
+        }
+        return new ColumnarOffer(slots.slots[index]);
+    }
+
+    @Override
+    public int size() {
+        return slots.size;
+    }
+
+    @Override
+    public void add(int index, Offer offer) {
+        if (index != slots.size) {
+            throw new UnsupportedOperationException("Offers can only be added at the end");
+        }
+
+        segment.add(slots, offer);
+
+        clearIndex();
+    }
+
+    @Override
+    public Offer set(int index, Offer offer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Offer remove(int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getTitleKey(int index) {
+        return segment.getValue(slots.slots[index], OfferPool.TITLE_KEY);
+    }
+
+    @Override
+    public String getDescriptionKey(int index) {
+        return segment.getValue(slots.slots[index], OfferPool.DESCRIPTION_KEY);
+    }
+
+    /**
+     * Read the price of an offer without creating a view.
+     * @param index position of the offer
+     * @return      price in cents
+     */
+    public int getPriceCents(int index) {
+        return segment.getPriceCents(slots.slots[index]);
+    }
+
+    /**
+     * Release the unused space (e.g. after all offers are added).
+     */
+    public void trimToSize() {
+        segment.trimToSize(slots);
+    }
+
+
+    // PRIVATE HELPER FUNCTIONS
+
+    /**
+     * View on the values of one offer. The values are read from the pool on every call.
+     */
+    private class ColumnarOffer extends Offer {
+
+        private final int slot;
+
+        ColumnarOffer(int slot) {
+            super(null, null, null, null);
+            this.slot = slot;
+        }
+
+        @Override
+        public String getTitle() {
+            return segment.getValue(slot, OfferPool.TITLE);
+        }
+
+        @Override
+        public Double getPrice() {
+            int cents = segment.getPriceCents(slot);
+            return cents != OfferPool.NO_PRICE ? cents / 100.0 : null;
+        }
+
+        @Override
+        public String getDescription() {
+            return segment.getValue(slot, OfferPool.DESCRIPTION);
+        }
+
+        @Override
+        public String getImageUrl() {
+            return segment.getValue(slot, OfferPool.IMAGE_URL);
+        }
+
+        @Override
+        public String getTitleKey() {
+            return segment.getValue(slot, OfferPool.TITLE_KEY);
+        }
+
+        @Override
+        public String getDescriptionKey() {
+            return segment.getValue(slot, OfferPool.DESCRIPTION_KEY);
+        }
+    }
+}
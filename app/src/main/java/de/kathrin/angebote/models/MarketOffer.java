@@ -0,0 +1,19 @@
+package de.kathrin.angebote.models;
+
+/**
+ * Offer found in one of several markets (search in all favourite markets). It is a copy of
+ * the offer, the market is added to show where it is on offer.
+ */
+public class MarketOffer extends Offer {
+
+    private final Market market;
+
+    public MarketOffer(Offer offer, Market market) {
+        super(offer);
+        this.market = market;
+    }
+
+    public Market getMarket() {
+        return market;
+    }
+}
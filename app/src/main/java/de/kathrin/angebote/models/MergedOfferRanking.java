@@ -0,0 +1,125 @@
+package de.kathrin.angebote.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Matching offers of several markets, best first: the rankings of the markets are merged by
+ * the keys of their offers, so the order is the same as in one market ({@link OfferRanking}).
+ * Offers found equally good keep the order the markets were added in.
+ *
+ * The offers of every market are taken from its ranking page by page and kept, so the merge
+ * can start again from the best offer when a market is added later (e.g. its search took
+ * longer than the others).
+ */
+public class MergedOfferRanking {
+
+    private final int pageSize;
+    private final List<Part> parts = new ArrayList<>();
+
+    /**
+     * Offers of one market taken from its ranking so far, marked with the market.
+     */
+    private static class Part {
+        final Market market;
+        final OfferRanking ranking;
+        final List<Offer> offers = new ArrayList<>();
+        long[] keys = new long[0];
+
+        // Number of offers returned by the current merge
+        int merged = 0;
+
+        Part(Market market, OfferRanking ranking) {
+            this.market = market;
+            this.ranking = ranking;
+        }
+    }
+
+    /**
+     * @param pageSize  number of offers taken from a ranking at once
+     */
+    public MergedOfferRanking(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Add the ranking of a market. Offers returned before are not changed, call restart to
+     * merge the offers of the market into them.
+     * @param market    market of the offers
+     * @param ranking   matching offers of the market
+     */
+    public synchronized void add(Market market, OfferRanking ranking) {
+        parts.add(new Part(market, ranking));
+    }
+
+    /**
+     * Start the merge again, the next offers are the best ones of all markets.
+     */
+    public synchronized void restart() {
+        for (Part part : parts) {
+            part.merged = 0;
+        }
+    }
+
+    /**
+     * @return  true if not all matching offers are returned yet
+     */
+    public synchronized boolean hasNext() {
+        for (Part part : parts) {
+            if (part.merged < part.offers.size() || part.ranking.hasNext()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the next best offers of all markets.
+     * @param count maximum number of offers
+     * @return      the offers (as {@link MarketOffer}), best first, empty if all are returned
+     */
+    public synchronized List<Offer> next(int count) {
+        List<Offer> resultList = new ArrayList<>(count);
+
+        while (resultList.size() < count) {
+            // The markets are few, so the best next offer is searched in all of them
+            Part best = null;
+            for (Part part : parts) {
+                if (hasOffer(part) && (best == null ||
+                        part.keys[part.merged] > best.keys[best.merged])) {
+                    best = part;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            resultList.add(best.offers.get(best.merged++));
+        }
+        return resultList;
+    }
+
+
+    // PRIVATE HELPER FUNCTIONS
+
+    /**
+     * Helper function for next. Take the next page from the ranking, if all offers taken
+     * so far are merged.
+     * @param part  offers of a market
+     * @return      true if the market has an offer that is not merged yet
+     */
+    private boolean hasOffer(Part part) {
+        if (part.merged == part.offers.size() && part.ranking.hasNext()) {
+            long[] pageKeys = new long[pageSize];
+            List<Offer> page = part.ranking.next(pageSize, pageKeys);
+
+            int size = part.offers.size();
+            part.keys = Arrays.copyOf(part.keys, size + page.size());
+            System.arraycopy(pageKeys, 0, part.keys, size, page.size());
+            for (Offer o : page) {
+                part.offers.add(new MarketOffer(o, part.market));
+            }
+        }
+        return part.merged < part.offers.size();
+    }
+}
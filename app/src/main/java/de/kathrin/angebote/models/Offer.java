@@ -2,8 +2,14 @@ package de.kathrin.angebote.models;
 
 import androidx.annotation.NonNull;
 
+import de.kathrin.angebote.utlis.HtmlText;
+import de.kathrin.angebote.utlis.SearchNormalizer;
+
 /**
  * Every offer has a title, price, description and image.
+ * Title and description are also kept normalized for the search (see {@link SearchNormalizer}).
+ * The description is HTML markup, it is only decoded when it is shown (see {@link HtmlText}).
+ * (Subclasses may read the values only when they are needed, they override the getters.)
  */
 
 public class Offer {
@@ -13,11 +19,39 @@ public class Offer {
     private final String description;
     private final String imageUrl;
 
+    // Normalized once, when the offer is read (or on first use, if a subclass reads it later).
+    // Not locked: a key computed twice by two threads is the same, and strings are immutable.
+    private String titleKey;
+    private String descriptionKey;
+
+    // Decoded on the first call of getDisplayDescription
+    private CharSequence displayDescription;
+
     public Offer(String title, Double price, String description, String imageUrl) {
         this.title = title;
         this.price = price;
         this.description = description;
         this.imageUrl = imageUrl;
+
+        if (title != null) {
+            titleKey = SearchNormalizer.normalize(title);
+        }
+        if (description != null) {
+            descriptionKey = SearchNormalizer.normalize(HtmlText.toPlainText(description));
+        }
+    }
+
+    /**
+     * Copy of another offer, its normalized texts are taken over instead of computed again.
+     * @param offer offer to copy (its values are read once, also of subclasses)
+     */
+    protected Offer(Offer offer) {
+        this.title = offer.getTitle();
+        this.price = offer.getPrice();
+        this.description = offer.getDescription();
+        this.imageUrl = offer.getImageUrl();
+        this.titleKey = offer.getTitleKey();
+        this.descriptionKey = offer.getDescriptionKey();
     }
 
     public String getTitle() {
@@ -36,9 +70,37 @@ public class Offer {
         return imageUrl;
     }
 
+    public String getTitleKey() {
+        String key = titleKey;
+        if (key == null) {
+            key = SearchNormalizer.normalize(getTitle());
+            titleKey = key;
+        }
+        return key;
+    }
+
+    public String getDescriptionKey() {
+        String key = descriptionKey;
+        if (key == null) {
+            key = SearchNormalizer.normalize(HtmlText.toPlainText(getDescription()));
+            descriptionKey = key;
+        }
+        return key;
+    }
+
+    /**
+     * @return  description with its formatting, to show it
+     */
+    public synchronized CharSequence getDisplayDescription() {
+        if (displayDescription == null) {
+            displayDescription = HtmlText.decode(getDescription());
+        }
+        return displayDescription;
+    }
+
     @NonNull
     @Override
     public String toString() {
-        return  title + ": " + price + "€\n(" + description + ")";
+        return  getTitle() + ": " + getPrice() + "€\n(" + getDescription() + ")";
     }
 }
@@ -0,0 +1,103 @@
+package de.kathrin.angebote.models;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Difference between two offer lists of a market: offers that were added, changed or removed.
+ * Every offer is identified by an id derived from its content (see OfferStore).
+ */
+public class OfferDiff {
+
+    private final Date availableFrom;
+    private final Date availableUntil;
+
+    private final List<Long> addedIds = new ArrayList<>();
+    private final List<Integer> addedPositions = new ArrayList<>();
+    private final List<Offer> added = new ArrayList<>();
+    private final List<Long> changedIds = new ArrayList<>();
+    private final List<Offer> changed = new ArrayList<>();
+    private final List<Long> removedIds = new ArrayList<>();
+
+    /**
+     * @param availableFrom     period of validity of the new offer list
+     * @param availableUntil    period of validity of the new offer list
+     */
+    public OfferDiff(Date availableFrom, Date availableUntil) {
+        this.availableFrom = availableFrom;
+        this.availableUntil = availableUntil;
+    }
+
+    // SETTER
+
+    /**
+     * @param id        id of the new offer
+     * @param position  position of the offer in the new offer list
+     * @param offer     the new offer
+     */
+    public void addAdded(long id, int position, Offer offer) {
+        addedIds.add(id);
+        addedPositions.add(position);
+        added.add(offer);
+    }
+
+    public void addChanged(long id, Offer offer) {
+        changedIds.add(id);
+        changed.add(offer);
+    }
+
+    public void addRemoved(long id) {
+        removedIds.add(id);
+    }
+
+    // GETTER
+
+    public Date getAvailableFrom() {
+        return availableFrom;
+    }
+
+    public Date getAvailableUntil() {
+        return availableUntil;
+    }
+
+    public List<Offer> getAdded() {
+        return added;
+    }
+
+    public List<Long> getAddedIds() {
+        return addedIds;
+    }
+
+    public List<Integer> getAddedPositions() {
+        return addedPositions;
+    }
+
+    public List<Offer> getChanged() {
+        return changed;
+    }
+
+    public List<Long> getChangedIds() {
+        return changedIds;
+    }
+
+    public List<Long> getRemovedIds() {
+        return removedIds;
+    }
+
+    /**
+     * @return true if no offer was added, changed or removed
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && changed.isEmpty() && removedIds.isEmpty();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return added.size() + " added, " + changed.size() + " changed, " +
+                removedIds.size() + " removed";
+    }
+}
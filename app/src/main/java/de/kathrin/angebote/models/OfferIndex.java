@@ -0,0 +1,449 @@
+package de.kathrin.angebote.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.kathrin.angebote.utlis.SearchNormalizer;
+
+/**
+ * Inverted index over the offers of an offerList: every word of a title or description points
+ * to the positions of the offers containing it. Each part is built on its first use, then a
+ * search only looks up the words of the query instead of going through all offers.
+ * Search words are found anywhere in the texts, also inside of compound words, with a
+ * {@link SuffixIndex}. The words themselves are only used for the search with typing errors,
+ * so they are collected on its first use.
+ * Words are taken from the normalized title and description ({@link Offer#getTitleKey()}), the
+ * search item is normalized the same way.
+ */
+public class OfferIndex {
+
+    private final List<Offer> offers;
+
+    // All words in sorted order, with the ascending positions of the offers containing them,
+    // collected on the first search with typing errors
+    private String[] words = null;
+    private int[][] positions = null;
+
+    // Sorted suffixes of the texts, built on the first search unless a stored one is set
+    private SuffixIndex suffixIndex = null;
+
+    // Trigrams of the words for the search with typing errors, built on the first use
+    private TrigramIndex trigramIndex = null;
+
+    /**
+     * Positions of the offers containing a word, while the index is built.
+     */
+    private static class Posting {
+        int[] positions = new int[4];
+        int size = 0;
+    }
+
+    /**
+     * Index the offers, nothing is built before the first search.
+     * @param offers    offers to index
+     */
+    OfferIndex(List<Offer> offers) {
+        this.offers = offers;
+    }
+
+    /**
+     * Result of a search, can be narrowed by the next search (see {@link #search(String, Result)}).
+     */
+    public static class Result {
+        private final OfferIndex index;
+        private final String normalizedSearchItem;
+        private final int[] positions;
+        private final boolean similar;
+
+        private Result(OfferIndex index, String normalizedSearchItem, int[] positions,
+                       boolean similar) {
+            this.index = index;
+            this.normalizedSearchItem = normalizedSearchItem;
+            this.positions = positions;
+            this.similar = similar;
+        }
+
+        /**
+         * @return  number of matching offers
+         */
+        public int size() {
+            return positions != null ? positions.length : index.offers.size();
+        }
+
+        /**
+         * @return  true if the offers only contain words similar to the search item
+         *          (see {@link #searchSimilar(String)})
+         */
+        public boolean isSimilar() {
+            return similar;
+        }
+
+        /**
+         * Rank the matching offers, see {@link OfferRanking}. Similar offers keep their order.
+         * @return  the matching offers, best first
+         */
+        public OfferRanking getRanking() {
+            int[] ranked = positions;
+            if (ranked == null) {
+                ranked = new int[index.offers.size()];
+                for (int i = 0; i < ranked.length; i++) {
+                    ranked[i] = i;
+                }
+            }
+            List<String> searchWords = similar ? new ArrayList<String>() :
+                    splitWords(normalizedSearchItem);
+            return new OfferRanking(index.offers, ranked, searchWords);
+        }
+
+        /**
+         * @return  matching offers, in the order of the offerList (best first for similar ones)
+         */
+        public List<Offer> getOffers() {
+            if (positions == null) {
+                return new ArrayList<>(index.offers);
+            }
+
+            List<Offer> resultList = new ArrayList<>(positions.length);
+            for (int position : positions) {
+                resultList.add(index.offers.get(position));
+            }
+            return resultList;
+        }
+    }
+
+    /**
+     * Find the offers containing all words of the search item in the title or the description
+     * (also as part of a longer word).
+     * @param searchItem    words to search for, all offers if there are none
+     * @return              matching offers, in the order of the offerList
+     */
+    public List<Offer> search(String searchItem) {
+        return search(searchItem, null).getOffers();
+    }
+
+    /**
+     * Find the offers containing all words of the search item, see {@link #search(String)}.
+     * If the search item only extends the one of the previous search (e.g. while it is typed),
+     * only the offers found by the previous search are checked.
+     * @param searchItem    words to search for, all offers if there are none
+     * @param previous      result of the previous search or null
+     * @return              result of the search
+     */
+    public Result search(String searchItem, Result previous) {
+        String normalizedSearchItem = SearchNormalizer.normalize(searchItem);
+        List<String> searchWords = splitWords(normalizedSearchItem);
+
+        // Every offer matching the new search item matched the previous one
+        if (previous != null && previous.index == this && previous.positions != null &&
+                !previous.similar && normalizedSearchItem.startsWith(previous.normalizedSearchItem)) {
+            return new Result(this, normalizedSearchItem, narrow(previous.positions, searchWords),
+                    false);
+        }
+
+        SuffixIndex suffixes = getSuffixIndex();
+
+        int[] matches = null;
+        for (String word : searchWords) {
+            int[] wordMatches = suffixes.find(word);
+            matches = matches == null ? wordMatches : intersect(matches, wordMatches);
+
+            if (matches.length == 0) {
+                break;
+            }
+        }
+
+        return new Result(this, normalizedSearchItem, matches, false);
+    }
+
+    /**
+     * Find the offers containing all words of the search item with small typing errors
+     * (e.g. "Joghrt" finds "Joghurt"): every search word may differ from the beginning of a word
+     * in the offer by one inserted, deleted or replaced character, long ones by two.
+     * Offers with fewer errors come first.
+     * @param searchItem    words to search for, all offers if there are none
+     * @return              result of the search, cannot be narrowed
+     */
+    public Result searchSimilar(String searchItem) {
+        String normalizedSearchItem = SearchNormalizer.normalize(searchItem);
+        List<String> searchWords = splitWords(normalizedSearchItem);
+        if (searchWords.isEmpty()) {
+            return new Result(this, normalizedSearchItem, null, false);
+        }
+
+        TrigramIndex trigrams = getTrigramIndex();
+        int[][] wordPositions = getWordPositions();
+
+        // Ascending positions of the matching offers and their number of errors so far
+        int[] matches = null;
+        int[] errors = null;
+
+        for (String word : searchWords) {
+            int maxDistance = TrigramIndex.getMaxDistance(word);
+
+            // Offers containing the word have no error, the others the one of the best word
+            BitSet[] found = new BitSet[maxDistance + 1];
+            for (int d = 0; d <= maxDistance; d++) {
+                found[d] = new BitSet(offers.size());
+            }
+            for (int position : getSuffixIndex().find(word)) {
+                found[0].set(position);
+            }
+            for (TrigramIndex.Match match : trigrams.findSimilar(word)) {
+                for (int position : wordPositions[match.word]) {
+                    found[match.distance].set(position);
+                }
+            }
+
+            BitSet all = new BitSet(offers.size());
+            for (BitSet f : found) {
+                all.or(f);
+            }
+
+            int[] wordMatches = new int[all.cardinality()];
+            int[] wordErrors = new int[wordMatches.length];
+            int count = 0;
+            for (int position = all.nextSetBit(0); position >= 0;
+                 position = all.nextSetBit(position + 1)) {
+                int d = 0;
+                while (!found[d].get(position)) {
+                    d++;
+                }
+                wordMatches[count] = position;
+                wordErrors[count++] = d;
+            }
+
+            if (matches == null) {
+                matches = wordMatches;
+                errors = wordErrors;
+            } else {
+                // Offers in both, with the errors added up
+                int[] combined = new int[Math.min(matches.length, wordMatches.length)];
+                int[] combinedErrors = new int[combined.length];
+                count = 0;
+                int i = 0;
+                int j = 0;
+                while (i < matches.length && j < wordMatches.length) {
+                    if (matches[i] < wordMatches[j]) {
+                        i++;
+                    } else if (matches[i] > wordMatches[j]) {
+                        j++;
+                    } else {
+                        combined[count] = matches[i];
+                        combinedErrors[count++] = errors[i++] + wordErrors[j++];
+                    }
+                }
+                matches = Arrays.copyOf(combined, count);
+                errors = Arrays.copyOf(combinedErrors, count);
+            }
+
+            if (matches.length == 0) {
+                break;
+            }
+        }
+
+        return new Result(this, normalizedSearchItem, sortByErrors(matches, errors), true);
+    }
+
+    /**
+     * @return  sorted suffixes of the offers' texts, built on the first call
+     */
+    public synchronized SuffixIndex getSuffixIndex() {
+        if (suffixIndex == null) {
+            suffixIndex = new SuffixIndex(offers);
+        }
+        return suffixIndex;
+    }
+
+    /**
+     * @return  true if the sorted suffixes are built or set already
+     */
+    public synchronized boolean hasSuffixIndex() {
+        return suffixIndex != null;
+    }
+
+    /**
+     * Use sorted suffixes that were stored for the same offers instead of sorting them again.
+     * @param suffixIndex   see {@link SuffixIndex#restore(List, long, int[])}
+     */
+    public synchronized void setSuffixIndex(SuffixIndex suffixIndex) {
+        this.suffixIndex = suffixIndex;
+    }
+
+    /**
+     * Split a normalized text into words (letters and digits, everything else separates them).
+     * @param text  normalized text
+     * @return      words of the text
+     */
+    public static List<String> splitWords(String text) {
+        List<String> wordList = new ArrayList<>();
+
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                wordList.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return wordList;
+    }
+
+
+    // PRIVATE HELPER FUNCTIONS
+
+    /**
+     * Helper function for searchSimilar.
+     * @return  trigram index of the words, built on the first call
+     */
+    private synchronized TrigramIndex getTrigramIndex() {
+        if (trigramIndex == null) {
+            collectWords();
+            trigramIndex = new TrigramIndex(words);
+        }
+        return trigramIndex;
+    }
+
+    /**
+     * Helper function for searchSimilar.
+     * @return  positions of the offers containing every word, collected on the first call
+     */
+    private synchronized int[][] getWordPositions() {
+        collectWords();
+        return positions;
+    }
+
+    /**
+     * Helper function. Split the title and the description of every offer into words and
+     * collect the offers of every word, unless it was done before.
+     */
+    private void collectWords() {
+        if (words != null) {
+            return;
+        }
+
+        Map<String, Posting> postings = new HashMap<>();
+        for (int i = 0; i < offers.size(); i++) {
+            addWords(postings, OfferList.getTitleKey(offers, i), i);
+            addWords(postings, OfferList.getDescriptionKey(offers, i), i);
+        }
+
+        words = postings.keySet().toArray(new String[0]);
+        Arrays.sort(words);
+
+        positions = new int[words.length][];
+        for (int i = 0; i < words.length; i++) {
+            Posting posting = postings.get(words[i]);
+            positions[i] = Arrays.copyOf(posting.positions, posting.size);
+        }
+    }
+
+    /**
+     * Helper function for searchSimilar. Order the offers by their number of errors, offers
+     * with the same number keep the order of the offerList.
+     * @param matches   ascending positions of the offers
+     * @param errors    number of errors of every offer
+     * @return          positions, fewest errors first
+     */
+    private static int[] sortByErrors(int[] matches, int[] errors) {
+        int maxErrors = 0;
+        for (int e : errors) {
+            maxErrors = Math.max(maxErrors, e);
+        }
+
+        // Few different numbers of errors, so go through the offers once for each
+        int[] result = new int[matches.length];
+        int count = 0;
+        for (int e = 0; e <= maxErrors; e++) {
+            for (int i = 0; i < matches.length; i++) {
+                if (errors[i] == e) {
+                    result[count++] = matches[i];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Helper function for collectWords. Add the position of the offer to every word
+     * of the text.
+     * @param postings  positions of every word so far
+     * @param text      title or description of the offer
+     * @param position  position of the offer
+     */
+    private static void addWords(Map<String, Posting> postings, String text, int position) {
+        for (String word : splitWords(text)) {
+            Posting posting = postings.get(word);
+
+            if (posting == null) {
+                posting = new Posting();
+                postings.put(word, posting);
+            } else if (posting.positions[posting.size - 1] == position) {
+                // Word appeared in this offer before
+                continue;
+            } else if (posting.size == posting.positions.length) {
+                posting.positions = Arrays.copyOf(posting.positions, posting.size * 2);
+            }
+
+            posting.positions[posting.size++] = position;
+        }
+    }
+
+    /**
+     * Helper function for search. Check the offers of the previous result for the words.
+     * @param candidates    positions of the offers of the previous result
+     * @param searchWords   normalized words to search for
+     * @return              ascending positions of the offers containing all words
+     */
+    private int[] narrow(int[] candidates, List<String> searchWords) {
+        int[] result = new int[candidates.length];
+        int count = 0;
+
+        for (int position : candidates) {
+            String titleKey = OfferList.getTitleKey(offers, position);
+            String descriptionKey = OfferList.getDescriptionKey(offers, position);
+            boolean allFound = true;
+            for (int i = 0; i < searchWords.size() && allFound; i++) {
+                allFound = titleKey.contains(searchWords.get(i)) ||
+                        descriptionKey.contains(searchWords.get(i));
+            }
+            if (allFound) {
+                result[count++] = position;
+            }
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Helper function for search. Positions contained in both arrays.
+     * @param a ascending positions
+     * @param b ascending positions
+     * @return  ascending positions in a and b
+     */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+}
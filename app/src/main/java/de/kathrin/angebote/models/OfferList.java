@@ -5,24 +5,124 @@ import android.annotation.SuppressLint;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.RandomAccess;
 
 import static de.kathrin.angebote.utlis.Strings.DATE_FORMAT_OFFER_LIST;
 
 /**
  * Every OfferList has a period of validity and (of course) a list with all offers.
+ * Subclasses may store the offers differently (e.g. read-only from a file), they
+ * override get and size.
  */
-public class OfferList extends ArrayList<Offer> {
+public class OfferList extends AbstractList<Offer> implements RandomAccess {
+
+    private final List<Offer> offers = new ArrayList<>();
 
     private Date availableFrom;
     private Date availableUntil;
 
+    // Built when the offers are searched the first time, dropped when they change
+    private OfferIndex index = null;
+
     @SuppressLint("SimpleDateFormat")
     private final DateFormat format = new SimpleDateFormat(DATE_FORMAT_OFFER_LIST);
 
     public OfferList() {}
 
+    // LIST ACCESS
+
+    @Override
+    public Offer get(int index) {
+        return offers.get(index);
+    }
+
+    @Override
+    public int size() {
+        return offers.size();
+    }
+
+    @Override
+    public void add(int index, Offer offer) {
+        offers.add(index, offer);
+        clearIndex();
+    }
+
+    @Override
+    public Offer set(int index, Offer offer) {
+        clearIndex();
+        return offers.set(index, offer);
+    }
+
+    @Override
+    public Offer remove(int index) {
+        clearIndex();
+        return offers.remove(index);
+    }
+
+    /**
+     * @return  index to search the offers, built on the first call
+     */
+    public synchronized OfferIndex getIndex() {
+        if (index == null) {
+            index = new OfferIndex(this);
+        }
+        return index;
+    }
+
+    /**
+     * Drop the index, the offers changed (called by subclasses that change their offers).
+     */
+    protected synchronized void clearIndex() {
+        index = null;
+    }
+
+    /**
+     * Normalized title of an offer ({@link Offer#getTitleKey()}). Subclasses that do not keep
+     * offer objects read it without creating one.
+     * @param index position of the offer
+     * @return      the normalized title
+     */
+    public String getTitleKey(int index) {
+        return get(index).getTitleKey();
+    }
+
+    /**
+     * Normalized description of an offer ({@link Offer#getDescriptionKey()}), like
+     * {@link #getTitleKey(int)}.
+     * @param index position of the offer
+     * @return      the normalized description
+     */
+    public String getDescriptionKey(int index) {
+        return get(index).getDescriptionKey();
+    }
+
+    /**
+     * Normalized title of an offer of any list, see {@link #getTitleKey(int)}. Used to scan
+     * all offers of a list for the search.
+     * @param offers    offers (an OfferList or e.g. a list of the tests)
+     * @param index     position of the offer
+     * @return          the normalized title
+     */
+    static String getTitleKey(List<Offer> offers, int index) {
+        return offers instanceof OfferList ? ((OfferList) offers).getTitleKey(index)
+                : offers.get(index).getTitleKey();
+    }
+
+    /**
+     * Normalized description of an offer of any list, see {@link #getTitleKey(List, int)}.
+     * @param offers    offers
+     * @param index     position of the offer
+     * @return          the normalized description
+     */
+    static String getDescriptionKey(List<Offer> offers, int index) {
+        return offers instanceof OfferList ? ((OfferList) offers).getDescriptionKey(index)
+                : offers.get(index).getDescriptionKey();
+    }
+
     // SETTER
 
     public void setAvailableFrom(Date availableFrom) {
@@ -34,6 +134,10 @@ public class OfferList extends ArrayList<Offer> {
     }
 
     // GETTER
+    public Date getAvailableFrom() {
+        return availableFrom;
+    }
+
     public String getAvailableFromFormatted () {
         return format.format(availableFrom);
     }
@@ -59,7 +163,7 @@ public class OfferList extends ArrayList<Offer> {
         for (Offer o: this) {
             concat.append(o.getTitle())
                     .append(": ")
-                    .append(o.getPrice().toString())
+                    .append(o.getPrice())
                     .append("€ ")
                     .append(o.getDescription())
                     .append(" ")
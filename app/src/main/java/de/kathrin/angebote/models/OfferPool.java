@@ -0,0 +1,467 @@
+package de.kathrin.angebote.models;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Stores the values of offers once for all markets (content addressed): an offer is found by
+ * the hash of its values, so the same offer in several markets (most offers of the chain) is
+ * kept only once. The lists of the markets ({@link ColumnarOfferList}) only keep the numbers
+ * of their offers' slots.
+ *
+ * The values are kept in a few arrays (see {@link Segment}). Offers are never removed from a
+ * segment. When most offers of the current segment are not used by any list anymore, new
+ * lists start a new segment, the old one is freed together with its last list.
+ *
+ * Only received offers are pooled. Offers restored from the cache files are read from the
+ * mapped file (MappedOfferList) and are not added, so a restored market shares no values
+ * with the other markets, and an offer it has in common with a received one is kept twice.
+ */
+class OfferPool {
+
+    // Values of an offer, in this order
+    static final int TITLE = 0;
+    static final int DESCRIPTION = 1;
+    static final int IMAGE_URL = 2;
+    static final int TITLE_KEY = 3;
+    static final int DESCRIPTION_KEY = 4;
+    private static final int VALUES = 5;
+
+    // Values kept as bytes (the others, the normalized texts, are read on every search and
+    // kept as strings)
+    private static final int ENCODED_VALUES = 3;
+    private static final int KEYS = VALUES - ENCODED_VALUES;
+
+    static final int NO_PRICE = Integer.MIN_VALUE;
+
+    private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+    private static final Charset UTF_16 = Charset.forName("UTF-16BE");
+
+    // FNV-1a (64 bit)
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int INITIAL_LIST_CAPACITY = 16;
+
+    // Size of the byte buffers, the values of an offer are kept in the same one
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    // Segments with fewer offers are never replaced
+    private static final int MIN_REPLACED_SLOTS = 4096;
+
+    private static OfferPool instance = null;
+
+    private Segment current = new Segment();
+
+    private OfferPool() {}
+
+    /**
+     * @return the pool of the process
+     */
+    static synchronized OfferPool getInstance() {
+        if (instance == null) {
+            instance = new OfferPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Register a new list. A new segment is started if most offers of the current one are not
+     * used anymore.
+     * @param list  new list
+     * @return      slots of the list, in the segment to add its offers to
+     */
+    synchronized ListSlots register(ColumnarOfferList list) {
+        if (current.getSlotCount() >= MIN_REPLACED_SLOTS &&
+                current.getUsedSlotCount() < current.getSlotCount() / 2) {
+            current = new Segment();
+        }
+        return current.addList(list);
+    }
+
+    /**
+     * Slots of the offers of one list (in the order of the list). The segment keeps them until
+     * the list is not used anymore, then the slots are released.
+     */
+    static class ListSlots extends WeakReference<ColumnarOfferList> {
+        final Segment segment;
+        int[] slots = new int[INITIAL_LIST_CAPACITY];
+        int size = 0;
+
+        private ListSlots(ColumnarOfferList list, Segment segment) {
+            super(list, segment.releasedLists);
+            this.segment = segment;
+        }
+    }
+
+    /**
+     * Values of offers in a few arrays: the prices in cents, the normalized texts, and the
+     * other strings one after another in byte buffers of CHUNK_SIZE (so only the small arrays
+     * are copied when the segment grows). Strings with characters of ISO-8859-1 only (German
+     * texts usually) take one byte per character, others two.
+     *
+     * Offers are added under the lock of the segment. Reading needs no lock: the arrays are
+     * only copied into bigger ones (then replaced as a whole) or written behind the last slot,
+     * and a new slot is published by the volatile write of the slot count. Readers read the
+     * count first, so they see everything written for the slots they received.
+     */
+    static class Segment {
+
+        /**
+         * Arrays of the segment, replaced as a whole when they grow.
+         */
+        private static class Storage {
+            final int[] prices;
+            final long[] hashes;
+            final String[] keys;
+            // Byte buffer of every slot
+            final int[] chunkOfSlots;
+            // Start of every encoded value in the buffer (shifted by one, the lowest bit marks
+            // two bytes per character), a value ends where the next one starts.
+            // ENCODED_VALUES + 1 starts per slot, the last one is the end of the slot.
+            final int[] starts;
+            final byte[][] chunks;
+
+            Storage(int[] prices, long[] hashes, String[] keys, int[] chunkOfSlots, int[] starts,
+                    byte[][] chunks) {
+                this.prices = prices;
+                this.hashes = hashes;
+                this.keys = keys;
+                this.chunkOfSlots = chunkOfSlots;
+                this.starts = starts;
+                this.chunks = chunks;
+            }
+        }
+
+        private volatile Storage storage = new Storage(new int[INITIAL_CAPACITY],
+                new long[INITIAL_CAPACITY], new String[INITIAL_CAPACITY * KEYS],
+                new int[INITIAL_CAPACITY], new int[INITIAL_CAPACITY * (ENCODED_VALUES + 1)],
+                new byte[][] {new byte[CHUNK_SIZE]});
+        private volatile int slotCount = 0;
+
+        // Current byte buffer and its used length
+        private int chunkCount = 1;
+        private int length = 0;
+
+        // Hash table of the slots (open addressing, slot + 1, 0 for empty entries), at most
+        // half full
+        private int[] table = new int[INITIAL_CAPACITY * 2];
+
+        // Number of lists using every slot, and the number of slots used by any list
+        private int[] uses = new int[INITIAL_CAPACITY];
+        private int usedSlotCount = 0;
+
+        // Slots of the lists using the segment, the ones of lists not used anymore are queued
+        private final Set<ListSlots> lists = new HashSet<>();
+        private final ReferenceQueue<ColumnarOfferList> releasedLists = new ReferenceQueue<>();
+
+        /**
+         * Add an offer to a list: find the slot of an offer with the same values, or add the
+         * offer.
+         * @param list  slots of the list (registered with this segment)
+         * @param offer any offer
+         * @return      slot of the offer
+         */
+        synchronized int add(ListSlots list, Offer offer) {
+            int slot = find(offer);
+
+            if (uses[slot]++ == 0) {
+                usedSlotCount++;
+            }
+            if (list.size == list.slots.length) {
+                list.slots = Arrays.copyOf(list.slots,
+                        Math.max(list.size * 2, INITIAL_LIST_CAPACITY));
+            }
+            list.slots[list.size++] = slot;
+            return slot;
+        }
+
+        /**
+         * @param list  new list
+         * @return      slots of the list, kept until the list is not used anymore
+         */
+        synchronized ListSlots addList(ColumnarOfferList list) {
+            ListSlots slots = new ListSlots(list, this);
+            lists.add(slots);
+            return slots;
+        }
+
+        /**
+         * Release the unused space of the slots of a list.
+         * @param list  slots of the list (registered with this segment)
+         */
+        synchronized void trimToSize(ListSlots list) {
+            list.slots = Arrays.copyOf(list.slots, list.size);
+        }
+
+        /**
+         * @param slot  slot of an offer
+         * @return      price in cents
+         */
+        int getPriceCents(int slot) {
+            return read(slot).prices[slot];
+        }
+
+        /**
+         * @param slot  slot of an offer
+         * @param value which value of the offer
+         * @return      the value as string (the normalized texts without creating one)
+         */
+        String getValue(int slot, int value) {
+            Storage s = read(slot);
+            if (value >= ENCODED_VALUES) {
+                return s.keys[slot * KEYS + value - ENCODED_VALUES];
+            }
+
+            int start = s.starts[slot * (ENCODED_VALUES + 1) + value];
+            int end = s.starts[slot * (ENCODED_VALUES + 1) + value + 1];
+            return new String(s.chunks[s.chunkOfSlots[slot]], start >>> 1,
+                    (end >>> 1) - (start >>> 1), (start & 1) != 0 ? UTF_16 : LATIN_1);
+        }
+
+        /**
+         * @return  number of offers in the segment
+         */
+        int getSlotCount() {
+            return slotCount;
+        }
+
+        /**
+         * Release the slots of the lists that are not used anymore.
+         * @return  number of offers used by any list
+         */
+        synchronized int getUsedSlotCount() {
+            ListSlots list;
+            while ((list = (ListSlots) releasedLists.poll()) != null) {
+                lists.remove(list);
+                for (int i = 0; i < list.size; i++) {
+                    if (--uses[list.slots[i]] == 0) {
+                        usedSlotCount--;
+                    }
+                }
+            }
+            return usedSlotCount;
+        }
+
+
+        // PRIVATE HELPER FUNCTIONS
+
+        /**
+         * Helper function for the reading functions.
+         * @param slot  slot of an offer
+         * @return      arrays containing the values of the slot
+         */
+        private Storage read(int slot) {
+            // The volatile read makes everything written for the slot visible
+            if (slot >= slotCount) {
+                throw new IndexOutOfBoundsException("Slot: " + slot);
+            }
+            return storage;
+        }
+
+        /**
+         * Helper function for add. Find the slot of an offer with the same values, or add the
+         * offer.
+         * @param offer any offer
+         * @return      slot of the offer
+         */
+        private int find(Offer offer) {
+            int price = offer.getPrice() != null ?
+                    (int) Math.round(offer.getPrice() * 100) : NO_PRICE;
+            String[] values = new String[VALUES];
+            values[TITLE] = offer.getTitle();
+            values[DESCRIPTION] = offer.getDescription();
+            values[IMAGE_URL] = offer.getImageUrl();
+            values[TITLE_KEY] = offer.getTitleKey();
+            values[DESCRIPTION_KEY] = offer.getDescriptionKey();
+            for (int v = 0; v < VALUES; v++) {
+                if (values[v] == null) {
+                    values[v] = "";
+                }
+            }
+
+            long hash = hash(price, values);
+            int entry = (int) (hash ^ (hash >>> 32)) & (table.length - 1);
+            while (table[entry] != 0) {
+                int slot = table[entry] - 1;
+                if (storage.hashes[slot] == hash && equals(slot, price, values)) {
+                    return slot;
+                }
+                entry = (entry + 1) & (table.length - 1);
+            }
+
+            // New offer, published by the write of the slot count
+            ensureCapacity(values);
+            Storage s = storage;
+            int newSlot = slotCount;
+            s.prices[newSlot] = price;
+            s.hashes[newSlot] = hash;
+            s.keys[newSlot * KEYS] = values[TITLE_KEY];
+            s.keys[newSlot * KEYS + 1] = values[DESCRIPTION_KEY];
+            s.chunkOfSlots[newSlot] = chunkCount - 1;
+            for (int v = 0; v < ENCODED_VALUES; v++) {
+                appendValue(s, newSlot * (ENCODED_VALUES + 1) + v, values[v]);
+            }
+            slotCount = newSlot + 1;
+
+            table[entry] = newSlot + 1;
+            if (slotCount * 2 > table.length) {
+                growTable();
+            }
+            return newSlot;
+        }
+
+        /**
+         * Helper function for find. Replace the arrays by bigger ones if the offer does not
+         * fit, start a new byte buffer if its values do not fit in the current one.
+         * @param values    values of the new offer
+         */
+        private void ensureCapacity(String[] values) {
+            Storage s = storage;
+
+            int byteCount = 0;
+            for (int v = 0; v < ENCODED_VALUES; v++) {
+                byteCount += values[v].length() * 2;
+            }
+
+            int[] prices = s.prices;
+            long[] hashes = s.hashes;
+            String[] keys = s.keys;
+            int[] chunkOfSlots = s.chunkOfSlots;
+            int[] starts = s.starts;
+            byte[][] chunks = s.chunks;
+            if (slotCount == prices.length) {
+                prices = Arrays.copyOf(prices, slotCount * 2);
+                hashes = Arrays.copyOf(hashes, slotCount * 2);
+                keys = Arrays.copyOf(keys, slotCount * 2 * KEYS);
+                chunkOfSlots = Arrays.copyOf(chunkOfSlots, slotCount * 2);
+                starts = Arrays.copyOf(starts, slotCount * 2 * (ENCODED_VALUES + 1));
+                uses = Arrays.copyOf(uses, slotCount * 2);
+            }
+            if (length + byteCount > chunks[chunkCount - 1].length) {
+                // Also copied if there is space left, the array may be read at the same time
+                chunks = Arrays.copyOf(chunks, chunkCount == chunks.length ?
+                        chunkCount * 2 : chunks.length);
+                // Offers bigger than a buffer get one of their own
+                chunks[chunkCount++] = new byte[Math.max(CHUNK_SIZE, byteCount)];
+                length = 0;
+            }
+
+            if (prices != s.prices || chunks != s.chunks) {
+                storage = new Storage(prices, hashes, keys, chunkOfSlots, starts, chunks);
+            }
+        }
+
+        /**
+         * Helper function for find. Append a value to the current byte buffer.
+         * @param s         arrays of the segment
+         * @param value     number of the encoded value
+         * @param string    the value
+         */
+        private void appendValue(Storage s, int value, String string) {
+            byte[] bytes = s.chunks[chunkCount - 1];
+
+            boolean wide = false;
+            for (int i = 0; i < string.length() && !wide; i++) {
+                wide = string.charAt(i) > 0xff;
+            }
+
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                if (wide) {
+                    bytes[length + 2 * i] = (byte) (c >>> 8);
+                    bytes[length + 2 * i + 1] = (byte) c;
+                } else {
+                    bytes[length + i] = (byte) c;
+                }
+            }
+
+            s.starts[value] = length << 1 | (wide ? 1 : 0);
+            length += wide ? string.length() * 2 : string.length();
+            s.starts[value + 1] = length << 1;
+        }
+
+        /**
+         * Helper function for find. Double the size of the hash table.
+         */
+        private void growTable() {
+            long[] hashes = storage.hashes;
+            table = new int[table.length * 2];
+            for (int slot = 0; slot < slotCount; slot++) {
+                int entry = (int) (hashes[slot] ^ (hashes[slot] >>> 32)) & (table.length - 1);
+                while (table[entry] != 0) {
+                    entry = (entry + 1) & (table.length - 1);
+                }
+                table[entry] = slot + 1;
+            }
+        }
+
+        /**
+         * Helper function for find. Compare the values of a slot with the ones of an offer,
+         * without decoding them.
+         * @param slot      slot with the same hash
+         * @param price     price of the offer in cents
+         * @param values    strings of the offer
+         * @return          true if all values are the same
+         */
+        private boolean equals(int slot, int price, String[] values) {
+            Storage s = storage;
+            if (s.prices[slot] != price ||
+                    !s.keys[slot * KEYS].equals(values[TITLE_KEY]) ||
+                    !s.keys[slot * KEYS + 1].equals(values[DESCRIPTION_KEY])) {
+                return false;
+            }
+
+            byte[] bytes = s.chunks[s.chunkOfSlots[slot]];
+            for (int v = 0; v < ENCODED_VALUES; v++) {
+                int start = s.starts[slot * (ENCODED_VALUES + 1) + v];
+                int end = s.starts[slot * (ENCODED_VALUES + 1) + v + 1] >>> 1;
+                boolean wide = (start & 1) != 0;
+                start >>>= 1;
+
+                String string = values[v];
+                if ((end - start) != (wide ? string.length() * 2 : string.length())) {
+                    return false;
+                }
+                for (int i = 0; i < string.length(); i++) {
+                    char c = wide ?
+                            (char) ((bytes[start + 2 * i] & 0xff) << 8 |
+                                    (bytes[start + 2 * i + 1] & 0xff)) :
+                            (char) (bytes[start + i] & 0xff);
+                    if (c != string.charAt(i)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Helper function for find. FNV-1a hash of all values of an offer.
+         * @param price     price in cents
+         * @param values    strings of the offer
+         * @return          the hash
+         */
+        private static long hash(int price, String[] values) {
+            long hash = FNV_OFFSET_BASIS;
+            for (int shift = 0; shift < 32; shift += 8) {
+                hash = (hash ^ ((price >>> shift) & 0xff)) * FNV_PRIME;
+            }
+            for (String value : values) {
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+                    hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+                }
+                // Separates the values, "ab" + "c" differs from "a" + "bc"
+                hash = (hash ^ 0xff) * FNV_PRIME;
+            }
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package de.kathrin.angebote.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Matching offers of a search, best ones first. Only as many offers as are shown are sorted:
+ * every call of {@link #next(int)} selects the next best ones with a heap of that size.
+ *
+ * For every search word the best place it is found in counts: in the title before the
+ * description, at the beginning of a word before inside of a word. Offers found equally good
+ * are ordered by the length of their title (shorter first), then by their order in the
+ * offerList. The rankings of several markets are merged by the same order
+ * ({@link MergedOfferRanking}).
+ */
+public class OfferRanking {
+
+    // Points for the best place of a search word
+    private static final int TITLE_WORD_START = 3;
+    private static final int TITLE_INFIX = 2;
+    private static final int DESCRIPTION_WORD_START = 1;
+
+    // Places a search word is found in a text
+    private static final int NOT_FOUND = 0;
+    private static final int INFIX = 1;
+    private static final int WORD_START = 2;
+
+    // Parts of the key of an offer: points, title length and position (bigger is better)
+    private static final int POINTS_SHIFT = 48;
+    private static final int TITLE_LENGTH_SHIFT = 32;
+    private static final long MAX_TITLE_LENGTH = 0xffff;
+    private static final long MAX_POSITION = 0xffffffffL;
+
+    private final List<Offer> offers;
+    private final int[] positions;
+    private final List<String> searchWords;
+
+    // Key of every matching offer, computed by prepare or on the first call of next
+    private long[] keys = null;
+
+    // Key of the last offer returned, the following ones have smaller keys
+    private long lastKey = Long.MAX_VALUE;
+    private int returned = 0;
+
+    /**
+     * @param offers        all offers of the offerList
+     * @param positions     positions of the matching offers
+     * @param searchWords   normalized words of the search, none to keep the order of the
+     *                      positions
+     */
+    OfferRanking(List<Offer> offers, int[] positions, List<String> searchWords) {
+        this.offers = offers;
+        this.positions = positions;
+        this.searchWords = searchWords;
+    }
+
+    /**
+     * @return  number of matching offers
+     */
+    public int size() {
+        return positions.length;
+    }
+
+    /**
+     * @return  true if not all matching offers are returned yet
+     */
+    public synchronized boolean hasNext() {
+        return returned < positions.length;
+    }
+
+    /**
+     * Rate all matching offers, if it was not done yet (to do it in the background, the
+     * following calls of next only select the best ones).
+     */
+    public synchronized void prepare() {
+        if (keys == null && !searchWords.isEmpty()) {
+            keys = new long[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                keys[i] = createKey(positions[i]);
+            }
+        }
+    }
+
+    /**
+     * Get the next best offers.
+     * @param count maximum number of offers
+     * @return      the offers, best first, empty if all are returned
+     */
+    public List<Offer> next(int count) {
+        return next(count, null);
+    }
+
+    /**
+     * Get the next best offers with their keys, see {@link #next(int)}.
+     * @param count     maximum number of offers
+     * @param offerKeys receives the keys of the offers (bigger for better ones, also if the
+     *                  order of the positions is kept) or null
+     * @return          the offers, best first, empty if all are returned
+     */
+    synchronized List<Offer> next(int count, long[] offerKeys) {
+        count = Math.min(count, positions.length - returned);
+        List<Offer> resultList = new ArrayList<>(Math.max(count, 0));
+        if (count <= 0) {
+            return resultList;
+        }
+
+        if (searchWords.isEmpty()) {
+            for (int i = returned; i < returned + count; i++) {
+                resultList.add(offers.get(positions[i]));
+                if (offerKeys != null) {
+                    offerKeys[i - returned] = MAX_POSITION - i;
+                }
+            }
+            returned += count;
+            return resultList;
+        }
+
+        prepare();
+
+        // Smallest of the best keys so far on top of the heap
+        long[] heap = new long[count];
+        int heapSize = 0;
+        for (long key : keys) {
+            if (key >= lastKey) {
+                continue;
+            }
+            if (heapSize < count) {
+                heap[heapSize] = key;
+                siftUp(heap, heapSize++);
+            } else if (key > heap[0]) {
+                heap[0] = key;
+                siftDown(heap, heapSize);
+            }
+        }
+
+        Arrays.sort(heap, 0, heapSize);
+        for (int i = heapSize - 1; i >= 0; i--) {
+            resultList.add(offers.get(getPosition(heap[i])));
+            if (offerKeys != null) {
+                offerKeys[heapSize - 1 - i] = heap[i];
+            }
+        }
+
+        lastKey = heap[0];
+        returned += heapSize;
+        return resultList;
+    }
+
+
+    // PRIVATE HELPER FUNCTIONS
+
+    /**
+     * Helper function for next. Rate the offer, keys are unique (they contain the position).
+     * @param position  position of the matching offer
+     * @return          key of the offer, bigger for better ones
+     */
+    private long createKey(int position) {
+        String titleKey = OfferList.getTitleKey(offers, position);
+        String descriptionKey = OfferList.getDescriptionKey(offers, position);
+        long points = 0;
+        for (String word : searchWords) {
+            points += getPoints(titleKey, descriptionKey, word);
+        }
+        long titleLength = Math.min(titleKey.length(), MAX_TITLE_LENGTH);
+
+        return points << POINTS_SHIFT |
+                (MAX_TITLE_LENGTH - titleLength) << TITLE_LENGTH_SHIFT |
+                (MAX_POSITION - position);
+    }
+
+    /**
+     * Helper function for next.
+     * @param key   key of an offer
+     * @return      position of the offer
+     */
+    private static int getPosition(long key) {
+        return (int) (MAX_POSITION - (key & MAX_POSITION));
+    }
+
+    /**
+     * Helper function for createKey. Points for the best place the word is found in.
+     * @param titleKey        normalized title of the matching offer
+     * @param descriptionKey  normalized description of the matching offer
+     * @param word            normalized search word
+     * @return                the points
+     */
+    private static int getPoints(String titleKey, String descriptionKey, String word) {
+        int title = find(titleKey, word);
+        if (title == WORD_START) {
+            return TITLE_WORD_START;
+        }
+        if (title == INFIX) {
+            return TITLE_INFIX;
+        }
+        return find(descriptionKey, word) == WORD_START ? DESCRIPTION_WORD_START : 0;
+    }
+
+    /**
+     * Helper function for getPoints.
+     * @param text  normalized text
+     * @param word  normalized search word
+     * @return      WORD_START if a word of the text starts with the word, INFIX if the text
+     *              only contains it inside of a word, else NOT_FOUND
+     */
+    private static int find(String text, String word) {
+        int result = NOT_FOUND;
+        int start = text.indexOf(word);
+        while (start >= 0) {
+            if (start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1))) {
+                return WORD_START;
+            }
+            result = INFIX;
+            start = text.indexOf(word, start + 1);
+        }
+        return result;
+    }
+
+    /**
+     * Helper function for next. Move a new key up to its place in the heap.
+     * @param heap  keys, smallest on top
+     * @param index index of the new key
+     */
+    private static void siftUp(long[] heap, int index) {
+        long key = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap[parent] <= key) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = key;
+    }
+
+    /**
+     * Helper function for next. Move the top key down to its place in the heap.
+     * @param heap  keys, smallest on top
+     * @param size  number of keys in the heap
+     */
+    private static void siftDown(long[] heap, int size) {
+        long key = heap[0];
+        int index = 0;
+        while (2 * index + 1 < size) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (key <= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = key;
+    }
+}
@@ -0,0 +1,333 @@
+package de.kathrin.angebote.models;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Suffix array over the normalized titles and descriptions of all offers, to find offers
+ * containing a word anywhere, also inside of compound words ("joghurt" in "Fruchtjoghurt").
+ * All texts are put into one text, every suffix of it is sorted. The suffixes starting with
+ * the search word are next to each other, found by binary search.
+ *
+ * The sorted suffixes only depend on the text, so they can be stored and used again for
+ * the same offers (see {@link #restore(List, long, int[])}).
+ */
+public class SuffixIndex {
+
+    // Separate title and description, and the offers. Search words never contain them.
+    private static final char TEXT_SEPARATOR = '\n';
+    private static final char OFFER_SEPARATOR = '\u0000';
+
+    // FNV-1a (64 bit)
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int offerCount;
+    private final String text;
+
+    // Position in the text where every offer starts
+    private final int[] offerStarts;
+
+    // Start of every suffix in sorted order, and the length of the common beginning of every
+    // suffix with the one before
+    private final int[] suffixes;
+    private final int[] commonPrefixes;
+
+    /**
+     * Sort all suffixes of the offers' texts.
+     * @param offers    offers to index
+     */
+    public SuffixIndex(List<Offer> offers) {
+        this.offerCount = offers.size();
+        this.offerStarts = new int[offerCount];
+        this.text = createText(offers, offerStarts);
+        this.suffixes = sortSuffixes(text);
+        this.commonPrefixes = createCommonPrefixes(text, suffixes);
+    }
+
+    /**
+     * Helper for restore.
+     */
+    private SuffixIndex(int offerCount, String text, int[] offerStarts, int[] suffixes) {
+        this.offerCount = offerCount;
+        this.text = text;
+        this.offerStarts = offerStarts;
+        this.suffixes = suffixes;
+        this.commonPrefixes = createCommonPrefixes(text, suffixes);
+    }
+
+    /**
+     * Use stored sorted suffixes for the offers, if they were sorted for the same texts.
+     * @param offers    offers to index
+     * @param textHash  hash of the text the suffixes were sorted for (see {@link #getTextHash()})
+     * @param suffixes  sorted suffixes (see {@link #getSuffixes()})
+     * @return          the index, null if the suffixes do not belong to the offers or are
+     *                  broken (every position of the text has to start one suffix)
+     */
+    public static SuffixIndex restore(List<Offer> offers, long textHash, int[] suffixes) {
+        int[] offerStarts = new int[offers.size()];
+        String text = createText(offers, offerStarts);
+
+        if (text.length() != suffixes.length || hash(text) != textHash ||
+                !isPermutation(suffixes)) {
+            return null;
+        }
+        return new SuffixIndex(offers.size(), text, offerStarts, suffixes);
+    }
+
+    /**
+     * Find the offers containing the word in the title or the description.
+     * @param word  normalized word
+     * @return      ascending positions of the offers
+     */
+    public int[] find(String word) {
+        if (word.isEmpty()) {
+            int[] all = new int[offerCount];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        // First suffix not smaller than the word
+        int low = 0;
+        int high = suffixes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(suffixes[middle], word) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low == suffixes.length || compare(suffixes[low], word) != 0) {
+            return new int[0];
+        }
+
+        // The following suffixes start with the word as long as they share its length
+        BitSet found = new BitSet(offerCount);
+        found.set(getOffer(suffixes[low]));
+        for (int i = low + 1; i < suffixes.length && commonPrefixes[i] >= word.length(); i++) {
+            found.set(getOffer(suffixes[i]));
+        }
+
+        int[] result = new int[found.cardinality()];
+        int count = 0;
+        for (int position = found.nextSetBit(0); position >= 0;
+             position = found.nextSetBit(position + 1)) {
+            result[count++] = position;
+        }
+        return result;
+    }
+
+    /**
+     * @return  hash of the indexed text, to recognize if stored suffixes belong to it
+     */
+    public long getTextHash() {
+        return hash(text);
+    }
+
+    /**
+     * @return  start of every suffix in sorted order (not to be changed)
+     */
+    public int[] getSuffixes() {
+        return suffixes;
+    }
+
+
+    // PRIVATE HELPER FUNCTIONS
+
+    /**
+     * Helper function. Put the normalized texts of all offers into one text.
+     * @param offers        offers to index
+     * @param offerStarts   receives the position where every offer starts
+     * @return              the text
+     */
+    private static String createText(List<Offer> offers, int[] offerStarts) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < offers.size(); i++) {
+            offerStarts[i] = text.length();
+            text.append(OfferList.getTitleKey(offers, i)).append(TEXT_SEPARATOR)
+                    .append(OfferList.getDescriptionKey(offers, i)).append(OFFER_SEPARATOR);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Helper function for restore.
+     * @param suffixes  stored starts of the suffixes
+     * @return          true if every position from 0 to the length is contained exactly once
+     */
+    private static boolean isPermutation(int[] suffixes) {
+        BitSet seen = new BitSet(suffixes.length);
+        for (int suffix : suffixes) {
+            if (suffix < 0 || suffix >= suffixes.length || seen.get(suffix)) {
+                return false;
+            }
+            seen.set(suffix);
+        }
+        return true;
+    }
+
+    /**
+     * Helper function for find. Compare the beginning of a suffix with the word.
+     * @param suffix    start of the suffix
+     * @param word      normalized word
+     * @return          0 if the suffix starts with the word, else the order of both
+     */
+    private int compare(int suffix, String word) {
+        int length = Math.min(word.length(), text.length() - suffix);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(suffix + i);
+            if (c != word.charAt(i)) {
+                return c < word.charAt(i) ? -1 : 1;
+            }
+        }
+        return length == word.length() ? 0 : -1;
+    }
+
+    /**
+     * Helper function for find.
+     * @param position  position in the text
+     * @return          the offer the position belongs to
+     */
+    private int getOffer(int position) {
+        int offer = Arrays.binarySearch(offerStarts, position);
+        return offer >= 0 ? offer : -offer - 2;
+    }
+
+    /**
+     * Helper function for the constructor. Sort all suffixes of the text by their first 1, 2,
+     * 4, ... characters (prefix doubling), each round a counting sort by two known ranks.
+     * @param text  text to index
+     * @return      start of every suffix in sorted order
+     */
+    private static int[] sortSuffixes(String text) {
+        int n = text.length();
+        int[] suffixes = new int[n];
+        if (n == 0) {
+            return suffixes;
+        }
+
+        int[] rank = new int[n];
+        int[] nextRank = new int[n];
+        int[] bySecond = new int[n];
+        int[] counts = new int[Math.max(n, Character.MAX_VALUE + 1)];
+
+        // Sort by the first character
+        for (int i = 0; i < n; i++) {
+            counts[text.charAt(i)]++;
+        }
+        for (int c = 1; c <= Character.MAX_VALUE; c++) {
+            counts[c] += counts[c - 1];
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            suffixes[--counts[text.charAt(i)]] = i;
+        }
+        int ranks = 1;
+        rank[suffixes[0]] = 0;
+        for (int i = 1; i < n; i++) {
+            if (text.charAt(suffixes[i]) != text.charAt(suffixes[i - 1])) {
+                ranks++;
+            }
+            rank[suffixes[i]] = ranks - 1;
+        }
+
+        for (int k = 1; ranks < n; k <<= 1) {
+            // Order by the rank of the characters k further: suffixes too short first
+            int count = 0;
+            for (int i = n - k; i < n; i++) {
+                bySecond[count++] = i;
+            }
+            for (int i = 0; i < n; i++) {
+                if (suffixes[i] >= k) {
+                    bySecond[count++] = suffixes[i] - k;
+                }
+            }
+
+            // Then stable by the own rank
+            Arrays.fill(counts, 0, ranks, 0);
+            for (int i = 0; i < n; i++) {
+                counts[rank[i]]++;
+            }
+            for (int r = 1; r < ranks; r++) {
+                counts[r] += counts[r - 1];
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                suffixes[--counts[rank[bySecond[i]]]] = bySecond[i];
+            }
+
+            // New ranks of the first 2k characters
+            nextRank[suffixes[0]] = 0;
+            ranks = 1;
+            for (int i = 1; i < n; i++) {
+                int a = suffixes[i - 1];
+                int b = suffixes[i];
+                int secondA = a + k < n ? rank[a + k] : -1;
+                int secondB = b + k < n ? rank[b + k] : -1;
+                if (rank[a] != rank[b] || secondA != secondB) {
+                    ranks++;
+                }
+                nextRank[b] = ranks - 1;
+            }
+
+            int[] swap = rank;
+            rank = nextRank;
+            nextRank = swap;
+        }
+
+        return suffixes;
+    }
+
+    /**
+     * Helper function for the constructors. Length of the common beginning of every suffix
+     * with the one before in sorted order (Kasai's algorithm, linear time).
+     * @param text      indexed text
+     * @param suffixes  start of every suffix in sorted order
+     * @return          the lengths, 0 for the first suffix
+     */
+    private static int[] createCommonPrefixes(String text, int[] suffixes) {
+        int n = suffixes.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[suffixes[i]] = i;
+        }
+
+        int[] commonPrefixes = new int[n];
+        int length = 0;
+        for (int position = 0; position < n; position++) {
+            if (order[position] == 0) {
+                length = 0;
+                continue;
+            }
+            int previous = suffixes[order[position] - 1];
+            while (position + length < n && previous + length < n &&
+                    text.charAt(position + length) == text.charAt(previous + length)) {
+                length++;
+            }
+            commonPrefixes[order[position]] = length;
+
+            // The next suffix shares at least one character less
+            if (length > 0) {
+                length--;
+            }
+        }
+        return commonPrefixes;
+    }
+
+    /**
+     * Helper function. FNV-1a hash of the text.
+     * @param text  any text
+     * @return      the hash
+     */
+    private static long hash(String text) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,248 @@
+package de.kathrin.angebote.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Finds words that are written similar to a search word (typing errors like "joghrt" for
+ * "joghurt"). Every word is split into trigrams (three characters in a row, the first one
+ * with a marker for the beginning of the word). Words sharing enough trigrams with the search
+ * word are candidates, which are then checked with the edit distance.
+ */
+class TrigramIndex {
+
+    private static final char WORD_START = '$';
+
+    // Words shorter than this are only found without errors
+    private static final int MIN_LENGTH_ONE_ERROR = 4;
+    private static final int MIN_LENGTH_TWO_ERRORS = 7;
+
+    private final String[] words;
+
+    // For every trigram the ascending positions of the words containing it
+    private final Map<String, int[]> wordsOfTrigram;
+
+    /**
+     * Similar word with the number of errors.
+     */
+    static class Match {
+        final int word;
+        final int distance;
+
+        Match(int word, int distance) {
+            this.word = word;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * Index the trigrams of all words.
+     * @param words distinct normalized words
+     */
+    TrigramIndex(String[] words) {
+        this.words = words;
+
+        Map<String, List<Integer>> trigrams = new HashMap<>();
+        for (int w = 0; w < words.length; w++) {
+            for (String trigram : getTrigrams(words[w])) {
+                List<Integer> wordList = trigrams.get(trigram);
+                if (wordList == null) {
+                    wordList = new ArrayList<>();
+                    trigrams.put(trigram, wordList);
+                }
+                // A word may contain the same trigram twice
+                if (wordList.isEmpty() || wordList.get(wordList.size() - 1) != w) {
+                    wordList.add(w);
+                }
+            }
+        }
+
+        wordsOfTrigram = new HashMap<>(trigrams.size());
+        for (Map.Entry<String, List<Integer>> e : trigrams.entrySet()) {
+            int[] positions = new int[e.getValue().size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = e.getValue().get(i);
+            }
+            wordsOfTrigram.put(e.getKey(), positions);
+        }
+    }
+
+    /**
+     * Find the words starting similar to the search word: the search word can be changed into
+     * the beginning of the word with at most one error (two for long search words).
+     * @param searchWord    normalized search word
+     * @return              similar words
+     */
+    List<Match> findSimilar(String searchWord) {
+        List<Match> matches = new ArrayList<>();
+
+        int maxDistance = getMaxDistance(searchWord);
+        if (maxDistance == 0) {
+            return matches;
+        }
+
+        for (int word : findCandidates(searchWord, maxDistance)) {
+            addIfSimilar(matches, searchWord, word, maxDistance);
+        }
+        return matches;
+    }
+
+    /**
+     * Find the words sharing enough trigrams with the search word to be similar, only they are
+     * checked with the edit distance (see {@link #findSimilar(String)}).
+     * @param searchWord    normalized search word
+     * @param maxDistance   number of errors allowed
+     * @return              ascending positions of the candidate words
+     */
+    int[] findCandidates(String searchWord, int maxDistance) {
+        // Every error changes at most three trigrams. Short search words have too few of
+        // them to rule out any word, then all words are checked.
+        TreeSet<String> trigrams = new TreeSet<>(getTrigrams(searchWord));
+        int minCommon = trigrams.size() - 3 * maxDistance;
+        if (minCommon <= 0) {
+            int[] all = new int[words.length];
+            for (int w = 0; w < all.length; w++) {
+                all[w] = w;
+            }
+            return all;
+        }
+
+        // Count the trigrams every word shares with the search word
+        int total = 0;
+        List<int[]> postings = new ArrayList<>(trigrams.size());
+        for (String trigram : trigrams) {
+            int[] posting = wordsOfTrigram.get(trigram);
+            if (posting != null) {
+                postings.add(posting);
+                total += posting.length;
+            }
+        }
+
+        int[] shared = new int[total];
+        int count = 0;
+        for (int[] posting : postings) {
+            System.arraycopy(posting, 0, shared, count, posting.length);
+            count += posting.length;
+        }
+        Arrays.sort(shared);
+
+        int[] candidates = new int[shared.length];
+        count = 0;
+        for (int i = 0; i < shared.length; ) {
+            int j = i;
+            while (j < shared.length && shared[j] == shared[i]) {
+                j++;
+            }
+            if (j - i >= minCommon) {
+                candidates[count++] = shared[i];
+            }
+            i = j;
+        }
+
+        return Arrays.copyOf(candidates, count);
+    }
+
+    /**
+     * @param searchWord    normalized search word
+     * @return              number of errors allowed for the search word
+     */
+    static int getMaxDistance(String searchWord) {
+        if (searchWord.length() >= MIN_LENGTH_TWO_ERRORS) {
+            return 2;
+        }
+        return searchWord.length() >= MIN_LENGTH_ONE_ERROR ? 1 : 0;
+    }
+
+
+    // PRIVATE HELPER FUNCTIONS
+
+    /**
+     * Helper function. Split a word into its trigrams.
+     * @param word  normalized word
+     * @return      trigrams, the first starting with the marker for the beginning
+     */
+    private static List<String> getTrigrams(String word) {
+        String marked = WORD_START + word;
+        List<String> trigrams = new ArrayList<>(Math.max(0, marked.length() - 2));
+        for (int i = 0; i + 3 <= marked.length(); i++) {
+            trigrams.add(marked.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Helper function for findSimilar. Add the word if it starts similar to the search word.
+     * @param matches       similar words found so far
+     * @param searchWord    normalized search word
+     * @param word          position of the word
+     * @param maxDistance   number of errors allowed
+     */
+    private void addIfSimilar(List<Match> matches, String searchWord, int word, int maxDistance) {
+        int distance = prefixDistance(searchWord, words[word], maxDistance);
+        if (distance <= maxDistance) {
+            matches.add(new Match(word, distance));
+        }
+    }
+
+    /**
+     * Helper function for addIfSimilar. Minimal number of insertions, deletions and
+     * replacements to change the search word into a beginning of the word (Levenshtein).
+     * Only the band of cells within maxDistance of the diagonal is computed, the others are
+     * further away anyway.
+     * @param searchWord    normalized search word
+     * @param word          word of the index
+     * @param maxDistance   distances above are not of interest
+     * @return              the distance, maxDistance + 1 if it is bigger than maxDistance
+     */
+    private static int prefixDistance(String searchWord, String word, int maxDistance) {
+        // Only beginnings up to this length can be close enough
+        int length = Math.min(word.length(), searchWord.length() + maxDistance);
+        // Stands for every distance that is too big (cells outside of the band)
+        int tooFar = maxDistance + 1;
+
+        int[] previous = new int[length + 1];
+        int[] current = new int[length + 1];
+        Arrays.fill(previous, tooFar);
+        Arrays.fill(current, tooFar);
+        for (int j = 0; j <= Math.min(length, maxDistance); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= searchWord.length(); i++) {
+            int first = Math.max(1, i - maxDistance);
+            int last = Math.min(length, i + maxDistance);
+
+            // Cell left of the band (may be left over from an earlier row)
+            current[first - 1] = first == 1 ? Math.min(i, tooFar) : tooFar;
+            int rowMinimum = current[first - 1];
+
+            for (int j = first; j <= last; j++) {
+                int cost = searchWord.charAt(i - 1) == word.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1),
+                        previous[j - 1] + cost);
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+
+            if (rowMinimum > maxDistance) {
+                return tooFar;
+            }
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        // Best beginning of the word (within the band of the last row)
+        int distance = tooFar;
+        int first = Math.max(0, searchWord.length() - maxDistance);
+        int last = Math.min(length, searchWord.length() + maxDistance);
+        for (int j = first; j <= last; j++) {
+            distance = Math.min(distance, previous[j]);
+        }
+        return distance;
+    }
+}
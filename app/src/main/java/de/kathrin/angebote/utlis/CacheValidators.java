@@ -0,0 +1,51 @@
+package de.kathrin.angebote.utlis;
+
+/**
+ * Validators (ETag and Last-Modified) of a server response.
+ * Sent with the next request, so the server only answers with the full response
+ * if something changed (otherwise with 304 - Not Modified).
+ */
+public class CacheValidators {
+
+    private String eTag;
+    private String lastModified;
+    private boolean notModified = false;
+
+    public CacheValidators() {}
+
+    public CacheValidators(String eTag, String lastModified) {
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    // SETTER
+
+    void setETag(String eTag) {
+        this.eTag = eTag;
+    }
+
+    void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    void setNotModified(boolean notModified) {
+        this.notModified = notModified;
+    }
+
+    // GETTER
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return true if the server answered with 304 (the cached response is still valid)
+     */
+    public boolean isNotModified() {
+        return notModified;
+    }
+}
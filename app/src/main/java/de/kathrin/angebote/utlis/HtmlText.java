@@ -0,0 +1,351 @@
+package de.kathrin.angebote.utlis;
+
+import android.text.Html;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Texts of the offers are received as HTML markup (e.g. "Sorte: <b>Erdbeer</b>&nbsp;150 g").
+ * The markup of the description is kept as it is: a plain text is made of it for the search,
+ * the rich text is only decoded when an offer is shown. Titles are only shown as plain text.
+ *
+ * The plain text is made in one pass over the markup, without the Android framework: tags are
+ * removed (line breaks, paragraphs and list items become spaces), entities are decoded and runs
+ * of whitespace become one space, none at the start or the end. Every thread reuses its own
+ * buffer, markup that does not change is returned as it is.
+ */
+public class HtmlText {
+
+    // Named entities (the ones used in offer texts), sorted by name for a binary search
+    private static final String[] ENTITY_NAMES;
+    private static final char[] ENTITY_CHARS;
+
+    // Characters of entities that are left out
+    private static final char NO_CHAR = 0;
+
+    // Longest name of an entity (including numeric ones like "#x1F600")
+    private static final int MAX_ENTITY_LENGTH = 8;
+
+    static {
+        Object[][] entities = {
+                {"amp", '&'}, {"lt", '<'}, {"gt", '>'}, {"quot", '"'}, {"apos", '\''},
+                {"nbsp", ' '}, {"shy", NO_CHAR},
+                {"auml", 'ä'}, {"ouml", 'ö'}, {"uuml", 'ü'}, {"Auml", 'Ä'}, {"Ouml", 'Ö'},
+                {"Uuml", 'Ü'}, {"szlig", 'ß'}, {"euro", '€'}, {"deg", '°'}, {"reg", '®'},
+                {"copy", '©'}, {"trade", '™'}, {"times", '×'}, {"middot", '·'},
+                {"frac12", '½'}, {"frac14", '¼'}, {"frac34", '¾'}, {"sup2", '²'}, {"sup3", '³'},
+                {"ndash", '–'}, {"mdash", '—'}, {"hellip", '…'}, {"bull", '•'},
+                {"bdquo", '„'}, {"ldquo", '“'}, {"rdquo", '”'}, {"sbquo", '‚'},
+                {"lsquo", '‘'}, {"rsquo", '’'}, {"laquo", '«'}, {"raquo", '»'},
+                {"eacute", 'é'}, {"egrave", 'è'}, {"agrave", 'à'}, {"ccedil", 'ç'},
+                {"ntilde", 'ñ'}, {"oslash", 'ø'}, {"aring", 'å'}, {"iuml", 'ï'}, {"euml", 'ë'}
+        };
+        Arrays.sort(entities, new Comparator<Object[]>() {
+            @Override
+            public int compare(Object[] a, Object[] b) {
+                return ((String) a[0]).compareTo((String) b[0]);
+            }
+        });
+
+        ENTITY_NAMES = new String[entities.length];
+        ENTITY_CHARS = new char[entities.length];
+        for (int i = 0; i < entities.length; i++) {
+            ENTITY_NAMES[i] = (String) entities[i][0];
+            ENTITY_CHARS[i] = (Character) entities[i][1];
+        }
+    }
+
+    private static final ThreadLocal<HtmlText> CONVERTERS = new ThreadLocal<HtmlText>() {
+        @Override
+        protected HtmlText initialValue() {
+            return new HtmlText();
+        }
+    };
+
+    // Plain text of the markup converted last
+    private char[] buffer = new char[256];
+    private int length = 0;
+
+    private HtmlText() {}
+
+    /**
+     * Plain text of markup (see above), with the buffer of the current thread.
+     * @param markup    HTML markup, may be null
+     * @return          plain text, null if the markup is null
+     */
+    public static String toPlainText(String markup) {
+        return markup != null ? CONVERTERS.get().convert(markup) : null;
+    }
+
+    /**
+     * Decode markup with its formatting, to show it (e.g. in a TextView).
+     * @param markup    HTML markup
+     * @return          formatted text, without line breaks at the end
+     */
+    public static CharSequence decode(String markup) {
+        CharSequence text = Html.fromHtml(markup != null ? markup : "");
+        int length = text.length();
+        while (length > 0 && Character.isWhitespace(text.charAt(length - 1))) {
+            length--;
+        }
+        return text.subSequence(0, length);
+    }
+
+
+    // PRIVATE HELPER FUNCTIONS
+
+    /**
+     * Helper function for toPlainText. Convert the markup into the buffer.
+     * @param markup    HTML markup
+     * @return          plain text, the markup itself if nothing is changed
+     */
+    private String convert(String markup) {
+        // Every character of the markup results in one character at most
+        if (buffer.length < markup.length()) {
+            buffer = new char[Math.max(markup.length(), buffer.length * 2)];
+        }
+        length = 0;
+
+        boolean changed = false;
+        // A space is pending, it is only written in front of the next character
+        boolean space = false;
+
+        int i = 0;
+        int end = markup.length();
+        while (i < end) {
+            char c = markup.charAt(i);
+
+            if (c == '<') {
+                int tagEnd = findTagEnd(markup, i);
+                if (tagEnd > i) {
+                    if (isBreak(markup, i + 1)) {
+                        space = true;
+                    }
+                    changed = true;
+                    i = tagEnd + 1;
+                    continue;
+                }
+            } else if (c == '&') {
+                int entityEnd = findEntityEnd(markup, i);
+                if (entityEnd > i) {
+                    int codePoint = decodeEntity(markup, i + 1, entityEnd);
+                    if (codePoint >= 0) {
+                        changed = true;
+                        i = entityEnd + 1;
+                        if (codePoint == ' ') {
+                            space = true;
+                        } else if (codePoint != NO_CHAR) {
+                            // An entity is shorter than its characters
+                            space = appendSpace(space);
+                            length += Character.toChars(codePoint, buffer, length);
+                        }
+                        continue;
+                    }
+                }
+            } else if (c <= ' ' || (c >= 0x85 && (Character.isWhitespace(c) ||
+                    Character.isSpaceChar(c)))) {
+                // Also no-break spaces, like &nbsp;. Only single spaces between words are kept
+                // as they are
+                changed |= c != ' ' || space || length == 0 || i == end - 1;
+                space = true;
+                i++;
+                continue;
+            }
+
+            space = appendSpace(space);
+            buffer[length++] = c;
+            i++;
+        }
+
+        return changed ? new String(buffer, 0, length) : markup;
+    }
+
+    /**
+     * Helper function for convert. Write a pending space, none at the start.
+     * @param space true if a space is pending
+     * @return      false, no space is pending anymore
+     */
+    private boolean appendSpace(boolean space) {
+        if (space && length > 0) {
+            buffer[length++] = ' ';
+        }
+        return false;
+    }
+
+    /**
+     * Helper function for convert. Find the end of a tag or comment ('>' outside of quoted
+     * attribute values).
+     * @param markup    HTML markup
+     * @param start     position of '<'
+     * @return          position of the '>', -1 if it is no tag (e.g. "1 < 2")
+     */
+    private static int findTagEnd(String markup, int start) {
+        if (start + 1 >= markup.length()) {
+            return -1;
+        }
+        char first = markup.charAt(start + 1);
+        if (!Character.isLetter(first) && first != '/' && first != '!' && first != '?') {
+            return -1;
+        }
+
+        if (markup.startsWith("!--", start + 1)) {
+            int end = markup.indexOf("-->", start + 4);
+            return end >= 0 ? end + 2 : -1;
+        }
+
+        char quote = 0;
+        for (int i = start + 1; i < markup.length(); i++) {
+            char c = markup.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Helper function for convert.
+     * @param markup    HTML markup
+     * @param start     start of the name of a tag (behind '<')
+     * @return          true if the tag separates words (line break, paragraph, ...)
+     */
+    private static boolean isBreak(String markup, int start) {
+        if (start < markup.length() && markup.charAt(start) == '/') {
+            start++;
+        }
+        int end = start;
+        while (end < markup.length() && Character.isLetterOrDigit(markup.charAt(end))) {
+            end++;
+        }
+
+        switch (end - start) {
+            case 1:
+                return isName(markup, start, "p");
+            case 2:
+                return isName(markup, start, "br") || isName(markup, start, "li") ||
+                        isName(markup, start, "ul") || isName(markup, start, "ol") ||
+                        (Character.toLowerCase(markup.charAt(start)) == 'h' &&
+                                markup.charAt(start + 1) >= '1' && markup.charAt(start + 1) <= '6');
+            case 3:
+                return isName(markup, start, "div");
+            case 10:
+                return isName(markup, start, "blockquote");
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Helper function for isBreak.
+     * @param markup    HTML markup
+     * @param start     start of the name of a tag
+     * @param name      name in lower case
+     * @return          true if the tag has the name (in any case)
+     */
+    private static boolean isName(String markup, int start, String name) {
+        return markup.regionMatches(true, start, name, 0, name.length());
+    }
+
+    /**
+     * Helper function for convert.
+     * @param markup    HTML markup
+     * @param start     position of '&'
+     * @return          position of the ';' ending the entity, -1 if there is none
+     */
+    private static int findEntityEnd(String markup, int start) {
+        int max = Math.min(markup.length(), start + MAX_ENTITY_LENGTH + 2);
+        for (int i = start + 1; i < max; i++) {
+            char c = markup.charAt(i);
+            if (c == ';') {
+                return i > start + 1 ? i : -1;
+            }
+            if (!Character.isLetterOrDigit(c) && c != '#') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Helper function for convert. Decode a named or numeric entity.
+     * @param markup    HTML markup
+     * @param start     start of the name (behind '&')
+     * @param end       position of the ';'
+     * @return          code point of the entity, NO_CHAR if it is left out, -1 if it is not
+     *                  known or no valid character (it is kept as it is)
+     */
+    private static int decodeEntity(String markup, int start, int end) {
+        if (markup.charAt(start) == '#') {
+            int radix = 10;
+            start++;
+            if (start < end && (markup.charAt(start) == 'x' || markup.charAt(start) == 'X')) {
+                radix = 16;
+                start++;
+            }
+            if (start == end) {
+                return -1;
+            }
+
+            int codePoint = 0;
+            for (int i = start; i < end; i++) {
+                int digit = Character.digit(markup.charAt(i), radix);
+                if (digit < 0) {
+                    return -1;
+                }
+                codePoint = codePoint * radix + digit;
+            }
+            if (codePoint == 0xad) {
+                return NO_CHAR;
+            }
+            if (codePoint == 0xa0) {
+                return ' ';
+            }
+            // Surrogates are only halves of characters
+            return codePoint > 0 && Character.isValidCodePoint(codePoint) &&
+                    (codePoint < Character.MIN_SURROGATE || codePoint > Character.MAX_SURROGATE)
+                    ? codePoint : -1;
+        }
+
+        // Binary search for the name, without a substring
+        int low = 0;
+        int high = ENTITY_NAMES.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(ENTITY_NAMES[middle], markup, start, end);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return ENTITY_CHARS[middle];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Helper function for decodeEntity. Compare like String.compareTo.
+     * @param name      name of a known entity
+     * @param markup    HTML markup
+     * @param start     start of the name in the markup
+     * @param end       end of the name in the markup
+     * @return          negative, zero or positive if the known name is smaller, equal or bigger
+     */
+    private static int compare(String name, String markup, int start, int end) {
+        int length = Math.min(name.length(), end - start);
+        for (int i = 0; i < length; i++) {
+            int difference = name.charAt(i) - markup.charAt(start + i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return name.length() - (end - start);
+    }
+}
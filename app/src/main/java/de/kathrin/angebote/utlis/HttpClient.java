@@ -0,0 +1,163 @@
+package de.kathrin.angebote.utlis;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import static de.kathrin.angebote.utlis.Strings.PROJECT_NAME;
+
+/**
+ * Process-wide HTTP client used for all server requests (offers, markets and images).
+ * Connections are not disconnected after a request but returned to the keep-alive pool of
+ * {@link HttpURLConnection}, so requests to the same host reuse the TCP/TLS connection.
+ * The number of parallel connections per host is limited.
+ */
+public class HttpClient {
+
+    private static final String LOG_TAG = PROJECT_NAME + HttpClient.class.getSimpleName();
+
+    // Idle connections kept in the pool and how long they are kept
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_DURATION_MS = 5 * 60 * 1000;
+
+    // Requests to the same host running at the same time
+    private static final int MAX_CONNECTIONS_PER_HOST = 4;
+
+    private static final int TIMEOUT_MS = 9000;
+
+    private static HttpClient instance = null;
+
+    // Permits for every host, and which connection holds a permit of which host
+    private final Map<String, Semaphore> hostPermits = new HashMap<>();
+    private final Map<HttpURLConnection, Semaphore> openConnections = new HashMap<>();
+
+    private static boolean poolConfigured = false;
+
+    private HttpClient() {
+        configureConnectionPool();
+    }
+
+    /**
+     * Configure the keep-alive pool of {@link HttpURLConnection}. The settings are only read
+     * when the pool is created, on the first connection of the process (of any library), and
+     * are ignored after that. Therefore this is called when the process starts (see
+     * AngeboteApplication), the call of the client is only a fallback.
+     */
+    public static synchronized void configureConnectionPool() {
+        if (poolConfigured) {
+            return;
+        }
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+        System.setProperty("http.keepAliveDuration", String.valueOf(KEEP_ALIVE_DURATION_MS));
+        poolConfigured = true;
+    }
+
+    /**
+     * @return the client instance of the process
+     */
+    public static synchronized HttpClient getInstance() {
+        if (instance == null) {
+            instance = new HttpClient();
+        }
+        return instance;
+    }
+
+    /**
+     * Open a connection to the given URL. Waits, if there are already
+     * MAX_CONNECTIONS_PER_HOST connections open to the host.
+     * Every connection has to be given back with {@link #releaseConnection}.
+     * @param url   URL to connect to
+     * @return      connection (with timeouts set)
+     */
+    public HttpURLConnection openConnection(URL url) throws IOException {
+        Semaphore permits = getHostPermits(url.getHost());
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for a connection");
+        }
+
+        HttpURLConnection conn;
+        try {
+            conn = (HttpURLConnection) url.openConnection();
+            conn.setConnectTimeout(TIMEOUT_MS);
+            conn.setReadTimeout(TIMEOUT_MS);
+        } catch (IOException e) {
+            permits.release();
+            throw e;
+        }
+
+        synchronized (openConnections) {
+            openConnections.put(conn, permits);
+        }
+        return conn;
+    }
+
+    /**
+     * Give back a connection opened with {@link #openConnection}. The response stream has
+     * to be closed before.
+     * @param conn      connection to give back
+     * @param reusable  true if the response was read completely, then the connection is kept
+     *                  alive for the next request. Otherwise it is closed.
+     */
+    public void releaseConnection(HttpURLConnection conn, boolean reusable) {
+        if (!reusable) {
+            conn.disconnect();
+        }
+
+        Semaphore permits;
+        synchronized (openConnections) {
+            permits = openConnections.remove(conn);
+        }
+
+        if (permits != null) {
+            permits.release();
+        } else {
+            Log.e(LOG_TAG, "Released a connection that was not opened by the client.");
+        }
+    }
+
+    /**
+     * Read a response stream up to the end (it is closed by the caller afterwards). Only a
+     * connection whose response was read completely can be kept alive.
+     * @param stream    response stream
+     * @return          true if the end was reached, false if the stream could not be read
+     */
+    public static boolean readToEnd(InputStream stream) {
+        byte[] buffer = new byte[1024];
+        try {
+            //noinspection StatementWithEmptyBody
+            while (stream.read(buffer) != -1) {
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "IOException: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Get (or create) the permits of a host.
+     * @param host  host name
+     * @return      semaphore limiting the connections to the host
+     */
+    private Semaphore getHostPermits(String host) {
+        synchronized (hostPermits) {
+            Semaphore permits = hostPermits.get(host);
+            if (permits == null) {
+                permits = new Semaphore(MAX_CONNECTIONS_PER_HOST, true);
+                hostPermits.put(host, permits);
+            }
+            return permits;
+        }
+    }
+}
@@ -4,7 +4,9 @@ import android.content.Context;
 import android.util.Log;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -16,8 +18,13 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.ProtocolException;
 import java.net.URL;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import static de.kathrin.angebote.utlis.Strings.PROJECT_NAME;
+import static de.kathrin.angebote.utlis.Strings.TEMPFILE_ENDING;
 
 /**
  * Utility class for handling server requests and file access
@@ -28,6 +35,22 @@ public class IOUtils {
 
     //                  SERVER REQUESTS
 
+    /**
+     * Callback to consume a stream (server response or file) while it is still open.
+     * The stream is closed by the caller afterwards.
+     * @param <T>   type of the object read from the stream
+     */
+    interface StreamHandler<T> {
+        T handleStream(InputStream stream) throws IOException;
+    }
+
+    /**
+     * Callback to write into a file stream. The stream is closed by the caller afterwards.
+     */
+    interface StreamWriter {
+        void writeStream(OutputStream stream) throws IOException;
+    }
+
     /**
      * Sends a request to the given URL and returns the response.
      * @param requestUrl    which URL is addressed
@@ -36,17 +59,53 @@ public class IOUtils {
      * @return  the server response
      */
     static String requestFromServer (String requestUrl, String requestMethod, String encodedData) throws IOException{
+        return requestFromServer(requestUrl, requestMethod, encodedData, null, new StreamHandler<String>() {
+            @Override
+            public String handleStream(InputStream stream) {
+                return convertStreamToString(stream);
+            }
+        });
+    }
 
-        String resultString = null;
+    /**
+     * Sends a request to the given URL and hands the response stream to the handler,
+     * so the response does not have to be held in memory as a whole.
+     * @param requestUrl    which URL is addressed
+     * @param requestMethod for example POST or GET
+     * @param encodedData   if its the search for a market: the requested city
+     * @param validators    validators of the last response (sent as If-None-Match and
+     *                      If-Modified-Since) or null. Updated with the new response.
+     * @param handler       reads the response stream
+     * @param <T>           type of the object read by the handler
+     * @return  the object read by the handler, null if the request failed or the
+     *          response was not modified
+     */
+    static <T> T requestFromServer (String requestUrl, String requestMethod, String encodedData,
+                                    CacheValidators validators, StreamHandler<T> handler)
+            throws IOException {
+
+        T result = null;
         HttpURLConnection conn = null;
+        boolean reusable = false;
         try {
 
-            // Establishing the connection to the web server - timeout after 9000ms
+            // Establishing the connection to the web server (reused if possible) - timeout after 9000ms
             URL url = new URL(requestUrl);
-            conn = (HttpURLConnection) url.openConnection();
+            conn = HttpClient.getInstance().openConnection(url);
             conn.setRequestMethod(requestMethod);
-            conn.setConnectTimeout(9000);
-            conn.setReadTimeout(9000);
+
+            // The response is decompressed in decodeStream
+            conn.setRequestProperty("Accept-Encoding", "gzip, deflate");
+
+            // Only get the full response if it changed since the last request
+            if (validators != null) {
+                if (validators.getETag() != null) {
+                    conn.setRequestProperty("If-None-Match", validators.getETag());
+                }
+                if (validators.getLastModified() != null) {
+                    conn.setRequestProperty("If-Modified-Since", validators.getLastModified());
+                }
+            }
 
             // If not null, it is a market request. Otherwise an offer request.
             if (encodedData != null) {
@@ -66,10 +125,38 @@ public class IOUtils {
 
             Log.v(LOG_TAG, "ResponseCode: " + conn.getResponseCode());
 
+            if (validators != null) {
+                validators.setNotModified(conn.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED);
+            }
+
+            // No body to read, the connection can be used again
+            reusable = conn.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED;
+
             if (conn.getResponseCode() == 200) {
-                // Request the data and convert it into a string
-                InputStream stream = new BufferedInputStream(conn.getInputStream());
-                resultString = convertStreamToString(stream);
+                // Remember the validators for the next request
+                if (validators != null) {
+                    validators.setETag(conn.getHeaderField("ETag"));
+                    validators.setLastModified(conn.getHeaderField("Last-Modified"));
+                }
+
+                // Count the bytes before and after the decompression
+                String encoding = conn.getContentEncoding();
+                CountingInputStream wireStream = new CountingInputStream(conn.getInputStream());
+                CountingInputStream decodedStream =
+                        new CountingInputStream(decodeStream(wireStream, encoding));
+
+                // Hand the (decompressed) response stream to the handler
+                InputStream stream = new BufferedInputStream(decodedStream);
+                try {
+                    result = handler.handleStream(stream);
+
+                    // Read the rest of the response, so the connection can be used again
+                    reusable = HttpClient.readToEnd(stream);
+                } finally {
+                    stream.close();
+                    TransferStats.record(requestUrl, encoding,
+                            wireStream.getCount(), decodedStream.getCount());
+                }
             }
 
         } catch (MalformedURLException e) {
@@ -78,15 +165,43 @@ public class IOUtils {
             Log.e(LOG_TAG, "ProtocolException: " + e.getMessage());
         } finally {
             if (conn != null) {
-                conn.disconnect();
+                HttpClient.getInstance().releaseConnection(conn, reusable);
             }
         }
 
-        return resultString;
+        return result;
+    }
+
+    /**
+     * Helper method for requestFromServer. Decompress the response stream while it is read,
+     * depending on the content encoding the server chose.
+     * @param stream    response stream as received
+     * @param encoding  content encoding of the response (gzip, deflate or null)
+     * @return          decompressed stream
+     */
+    private static InputStream decodeStream(InputStream stream, String encoding) throws IOException {
+        if ("gzip".equalsIgnoreCase(encoding)) {
+            return new GZIPInputStream(stream);
+        }
+
+        if ("deflate".equalsIgnoreCase(encoding)) {
+            // "deflate" should have a zlib header, but some servers send raw deflate data
+            BufferedInputStream bufferedStream = new BufferedInputStream(stream);
+            bufferedStream.mark(2);
+            int first = bufferedStream.read();
+            int second = bufferedStream.read();
+            bufferedStream.reset();
+
+            boolean zlibHeader = (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+            return new InflaterInputStream(bufferedStream, new Inflater(!zlibHeader));
+        }
+
+        return stream;
     }
 
     /**
      * Helper method for requestFromServer and restoreStringFromFile. Converts a InputStream into a string.
+     * The stream is closed by the caller (the connection of a response may be used again).
      * @param is    the InputStream
      * @return      the string
      */
@@ -101,12 +216,6 @@ public class IOUtils {
             }
         } catch (IOException e) {
             Log.e(LOG_TAG, "IOException: " + e.getMessage());
-        } finally {
-            try {
-                bufferedReader.close();
-            } catch (IOException e) {
-                Log.e(LOG_TAG, "IOException: " + e.getMessage());
-            }
         }
 
         return stringBuilder.toString();
@@ -171,4 +280,121 @@ public class IOUtils {
         Log.v(LOG_TAG, "Restored: " + jsonString);
         return jsonString;
     }
+
+    /**
+     * Open a file and hand its content as a stream to the handler.
+     * @param context   current context
+     * @param filename  name of the file that is read
+     * @param handler   reads the file stream
+     * @param <T>       type of the object read by the handler
+     * @return  the object read by the handler
+     */
+    static <T> T restoreFromFile (Context context, String filename, StreamHandler<T> handler)
+            throws IOException {
+        InputStream stream = new BufferedInputStream(context.openFileInput(filename));
+
+        // Compressed files are decompressed while they are read
+        if (isCompressed(stream)) {
+            stream = new BufferedInputStream(new GZIPInputStream(stream));
+        }
+
+        try {
+            return handler.handleStream(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Read the whole content of a file.
+     * @param context   current context
+     * @param filename  name of the file that is read
+     * @return  the file content
+     */
+    static byte[] restoreBytesFromFile (Context context, String filename) throws IOException {
+        return restoreFromFile(context, filename, new StreamHandler<byte[]>() {
+            @Override
+            public byte[] handleStream(InputStream stream) throws IOException {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                int count;
+                while ((count = stream.read(buffer)) != -1) {
+                    content.write(buffer, 0, count);
+                }
+                return content.toByteArray();
+            }
+        });
+    }
+
+    /**
+     * Check if a stream starts with the GZIP header, without consuming it.
+     * @param stream    stream that supports mark and reset
+     * @return          true if the stream is compressed
+     */
+    static boolean isCompressed (InputStream stream) throws IOException {
+        stream.mark(2);
+        int first = stream.read();
+        int second = stream.read();
+        stream.reset();
+
+        return first == (GZIPInputStream.GZIP_MAGIC & 0xff) &&
+                second == (GZIPInputStream.GZIP_MAGIC >>> 8);
+    }
+
+    /**
+     * Append bytes to the end of a file. The file is created if it does not exist.
+     * @param context   current context
+     * @param filename  name of the file that is written
+     * @param bytes     bytes to append
+     */
+    static void appendToFile (Context context, String filename, byte[] bytes) throws IOException {
+        OutputStream stream = context.openFileOutput(filename, Context.MODE_APPEND);
+        try {
+            stream.write(bytes);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Write into a file with the given writer. The content is written into a temporary file
+     * first, which then replaces the file. So the file is never half written and readers that
+     * still have the old file open (or mapped) keep the old content.
+     * @param context   current context
+     * @param filename  name of the file that is written
+     * @param writer    writes the file content
+     */
+    static void saveInFile (Context context, String filename, StreamWriter writer) throws IOException {
+        saveInFile(context, filename, writer, false);
+    }
+
+    /**
+     * Write into a file with the given writer, see {@link #saveInFile(Context, String, StreamWriter)}.
+     * If the file is compressed, the content is compressed (GZIP) while it is written.
+     * restoreFromFile recognizes compressed files and decompresses them while they are read.
+     * @param context       current context
+     * @param filename      name of the file that is written
+     * @param writer        writes the file content
+     * @param compressed    true to compress the file
+     */
+    static void saveInFile (Context context, String filename, StreamWriter writer,
+                            boolean compressed) throws IOException {
+        String tempFilename = filename + TEMPFILE_ENDING;
+
+        OutputStream stream = new BufferedOutputStream(
+                context.openFileOutput(tempFilename, Context.MODE_PRIVATE));
+        try {
+            if (compressed) {
+                stream = new GZIPOutputStream(stream, 8192);
+            }
+            writer.writeStream(stream);
+        } finally {
+            stream.close();
+        }
+
+        if (!context.getFileStreamPath(tempFilename).renameTo(context.getFileStreamPath(filename))) {
+            context.deleteFile(tempFilename);
+            throw new IOException("Could not replace " + filename);
+        }
+    }
 }
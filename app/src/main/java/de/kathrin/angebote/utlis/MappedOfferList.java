@@ -0,0 +1,196 @@
+package de.kathrin.angebote.utlis;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import de.kathrin.angebote.models.Offer;
+import de.kathrin.angebote.models.OfferList;
+
+import static de.kathrin.angebote.utlis.OfferCacheFile.CHARSET;
+import static de.kathrin.angebote.utlis.OfferCacheFile.ENTRY_DESCRIPTION;
+import static de.kathrin.angebote.utlis.OfferCacheFile.ENTRY_ID;
+import static de.kathrin.angebote.utlis.OfferCacheFile.ENTRY_IMAGE_URL;
+import static de.kathrin.angebote.utlis.OfferCacheFile.ENTRY_PRICE;
+import static de.kathrin.angebote.utlis.OfferCacheFile.ENTRY_SIZE;
+import static de.kathrin.angebote.utlis.OfferCacheFile.ENTRY_TITLE;
+import static de.kathrin.angebote.utlis.OfferCacheFile.HEADER_AVAILABLE_FROM;
+import static de.kathrin.angebote.utlis.OfferCacheFile.HEADER_AVAILABLE_UNTIL;
+import static de.kathrin.angebote.utlis.OfferCacheFile.HEADER_GENERATION;
+import static de.kathrin.angebote.utlis.OfferCacheFile.HEADER_OFFER_COUNT;
+import static de.kathrin.angebote.utlis.OfferCacheFile.HEADER_SIZE;
+import static de.kathrin.angebote.utlis.OfferCacheFile.MAGIC;
+import static de.kathrin.angebote.utlis.OfferCacheFile.NO_PRICE;
+import static de.kathrin.angebote.utlis.OfferCacheFile.VERSION;
+
+/**
+ * Read-only offerList on a memory mapped offer file (see {@link OfferCacheFile}), or on the
+ * content of a compressed one.
+ * Nothing is decoded when the file is opened: an offer is created when it is accessed and
+ * decodes its title, description and image URL only when they are needed.
+ */
+class MappedOfferList extends OfferList {
+
+    private final ByteBuffer buffer;
+    private final int offerCount;
+    private final int stringRegion;
+
+    // Offers accessed so far (keeps the decoded strings)
+    private final Offer[] offers;
+
+    /**
+     * Check the header and the size of the mapped file.
+     * @param buffer    mapped offer file
+     * @throws IOException  if the file is no offer file of this version or is damaged
+     */
+    MappedOfferList(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("No offer file");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported offer file version " + version);
+        }
+
+        offerCount = buffer.getInt(HEADER_OFFER_COUNT);
+        // In long, a damaged count must not overflow into a region that seems to fit
+        long entriesEnd = HEADER_SIZE + (long) offerCount * ENTRY_SIZE;
+        if (offerCount < 0 || entriesEnd > buffer.capacity()) {
+            throw new IOException("Damaged offer file");
+        }
+        stringRegion = (int) entriesEnd;
+
+        offers = new Offer[offerCount];
+
+        setAvailableFrom(new Date(buffer.getLong(HEADER_AVAILABLE_FROM)));
+        setAvailableUntil(new Date(buffer.getLong(HEADER_AVAILABLE_UNTIL)));
+    }
+
+    @Override
+    public Offer get(int index) {
+        if (index < 0 || index >= offerCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + offerCount);
+        }
+
+        synchronized (offers) {
+            if (offers[index] == null) {
+                offers[index] = new MappedOffer(HEADER_SIZE + index * ENTRY_SIZE);
+            }
+            return offers[index];
+        }
+    }
+
+    @Override
+    public int size() {
+        return offerCount;
+    }
+
+    /**
+     * @return generation of the mapped file
+     */
+    long getGeneration() {
+        return buffer.getLong(HEADER_GENERATION);
+    }
+
+    /**
+     * Read the id of an offer without decoding it.
+     * @param index position of the offer
+     * @return      id of the offer
+     */
+    long getId(int index) {
+        return buffer.getLong(HEADER_SIZE + index * ENTRY_SIZE + ENTRY_ID);
+    }
+
+    // The file is read-only
+
+    @Override
+    public void add(int index, Offer offer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Offer set(int index, Offer offer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Offer remove(int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Decode a string referenced in an index entry.
+     * @param position  position of the string reference (offset, length) in the file
+     * @return          decoded string
+     */
+    private String decodeString(int position) {
+        int offset = buffer.getInt(position);
+        int length = buffer.getInt(position + 4);
+
+        // Damaged reference
+        if (offset < 0 || length < 0 || (long) stringRegion + offset + length > buffer.capacity()) {
+            return "";
+        }
+
+        // Own view of the buffer, the position of the shared one is never changed
+        ByteBuffer view = buffer.duplicate();
+        view.position(stringRegion + offset);
+
+        byte[] bytes = new byte[length];
+        view.get(bytes);
+        return new String(bytes, CHARSET);
+    }
+
+    /**
+     * Read the price of an index entry.
+     * @param entry position of the index entry
+     * @return      the price, null if the offer has none
+     */
+    private Double readPrice(int entry) {
+        double price = buffer.getDouble(entry + ENTRY_PRICE);
+        return Double.compare(price, NO_PRICE) != 0 ? price : null;
+    }
+
+    /**
+     * Offer in the mapped file, decodes every value on the first access.
+     */
+    private class MappedOffer extends Offer {
+
+        private final int entry;
+
+        private String title;
+        private String description;
+        private String imageUrl;
+
+        MappedOffer(int entry) {
+            super(null, readPrice(entry), null, null);
+            this.entry = entry;
+        }
+
+        @Override
+        public synchronized String getTitle() {
+            if (title == null) {
+                title = decodeString(entry + ENTRY_TITLE);
+            }
+            return title;
+        }
+
+        @Override
+        public synchronized String getDescription() {
+            if (description == null) {
+                description = decodeString(entry + ENTRY_DESCRIPTION);
+            }
+            return description;
+        }
+
+        @Override
+        public synchronized String getImageUrl() {
+            if (imageUrl == null) {
+                imageUrl = decodeString(entry + ENTRY_IMAGE_URL);
+            }
+            return imageUrl;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package de.kathrin.angebote.utlis;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import de.kathrin.angebote.models.Market;
+
+import static de.kathrin.angebote.utlis.Strings.PROJECT_NAME;
+
+/**
+ * Runs the same task for several markets in parallel (at most a given number at the same
+ * time) and collects the results, until all markets are done or the deadline has passed.
+ * @param <T>   result of the task for one market
+ */
+public class MarketFanOut<T> {
+
+    private static final String LOG_TAG = PROJECT_NAME + MarketFanOut.class.getSimpleName();
+
+    /**
+     * Task that is run for every market.
+     * @param <T>   result of the task
+     */
+    public interface MarketTask<T> {
+        T run(Market market) throws Exception;
+    }
+
+    /**
+     * Informed every time a market is done (on the thread calling {@link #runAll}).
+     * @param <T>   result of the task
+     */
+    public interface Listener<T> {
+        void onMarketDone(Market market, T result);
+    }
+
+    private final int parallelism;
+    private final long deadlineMs;
+
+    /**
+     * @param parallelism   number of markets handled at the same time
+     * @param deadlineMs    time after which the unfinished markets are cancelled
+     */
+    public MarketFanOut(int parallelism, long deadlineMs) {
+        this.parallelism = parallelism;
+        this.deadlineMs = deadlineMs;
+    }
+
+    /**
+     * Run the task for all markets and wait until they are done (or the deadline passed).
+     * @param markets   markets to handle
+     * @param task      task to run for every market
+     * @param listener  informed when a market is done, may be null
+     * @return          results of all markets that finished successfully, in the order
+     *                  they were done (markets that failed or were too slow are missing)
+     */
+    public Map<Market, T> runAll(List<Market> markets, final MarketTask<T> task, Listener<T> listener) {
+        Map<Market, T> results = new LinkedHashMap<>();
+
+        if (markets.isEmpty()) {
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, markets.size()));
+        CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+
+        // Submit all markets, remember which future belongs to which market
+        Map<Future<T>, Market> futures = new LinkedHashMap<>();
+        for (final Market m : markets) {
+            Future<T> future = completionService.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    return task.run(m);
+                }
+            });
+            futures.put(future, m);
+        }
+
+        long deadline = System.currentTimeMillis() + deadlineMs;
+
+        try {
+            // Collect the markets in the order they are done
+            for (int i = 0; i < markets.size(); i++) {
+                long remaining = deadline - System.currentTimeMillis();
+                Future<T> future = completionService.poll(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+
+                if (future == null) {
+                    Log.v(LOG_TAG, "Deadline passed, " + (markets.size() - i) + " markets not done.");
+                    break;
+                }
+
+                Market market = futures.get(future);
+                try {
+                    T result = future.get();
+                    results.put(market, result);
+
+                    if (listener != null) {
+                        listener.onMarketDone(market, result);
+                    }
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Failed for market " + market.getMarketID() + ": " +
+                            e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.e(LOG_TAG, "InterruptedException: " + e.getMessage());
+            Thread.currentThread().interrupt();
+        } finally {
+            // Cancel the markets that are not done
+            for (Future<T> future : new ArrayList<>(futures.keySet())) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+
+        return results;
+    }
+}
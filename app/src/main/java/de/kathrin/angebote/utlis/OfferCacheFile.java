@@ -0,0 +1,184 @@
+package de.kathrin.angebote.utlis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import de.kathrin.angebote.models.Offer;
+import de.kathrin.angebote.models.OfferList;
+
+import static de.kathrin.angebote.utlis.Strings.UTF8;
+
+/**
+ * Binary file format of the stored offers of a market (the base snapshot, see {@link OfferStore}).
+ *
+ *  Header:         magic number, version, generation (changes with every written file),
+ *                  available from, available until (ms), number of offers
+ *  Index:          one entry of fixed width for every offer
+ *                  (offset and length of title, description and image URL in the string region,
+ *                  price (NaN if there is none), id of the offer)
+ *  String region:  UTF-8 bytes of all strings (every title, description and image URL is
+ *                  stored only once)
+ *
+ * All numbers are big endian. The file is memory mapped when it is read, see {@link MappedOfferList}.
+ * The whole file may be GZIP compressed, then it is decompressed into memory instead.
+ */
+class OfferCacheFile {
+
+    static final int MAGIC = 0x414E4742;   // "ANGB"
+    static final int VERSION = 3;
+
+    static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4;
+    static final int ENTRY_SIZE = 6 * 4 + 8 + 8;
+
+    // Positions in the header
+    static final int HEADER_GENERATION = 8;
+    static final int HEADER_AVAILABLE_FROM = 16;
+    static final int HEADER_AVAILABLE_UNTIL = 24;
+    static final int HEADER_OFFER_COUNT = 32;
+
+    // Positions in an index entry
+    static final int ENTRY_TITLE = 0;
+    static final int ENTRY_DESCRIPTION = 8;
+    static final int ENTRY_IMAGE_URL = 16;
+    static final int ENTRY_PRICE = 24;
+    static final int ENTRY_ID = 32;
+
+    // Price of offers without a price (no real price is NaN)
+    static final double NO_PRICE = Double.NaN;
+
+    // First bytes of a compressed file (as read big endian) and size of the GZIP trailer
+    private static final int GZIP_HEADER = 0x1f8b;
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    static final Charset CHARSET = Charset.forName(UTF8);
+
+    /**
+     * Write the offerList in the binary format.
+     * @param out           stream to write to (not closed)
+     * @param offerList     offers to write
+     * @param ids           id of every offer
+     * @param generation    generation of the file
+     */
+    static void write(OutputStream out, OfferList offerList, long[] ids, long generation)
+            throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+
+        // Header
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeLong(generation);
+        data.writeLong(offerList.getAvailableFromTime());
+        data.writeLong(offerList.getAvailableUntilTime());
+        data.writeInt(offerList.size());
+
+        // Collect all different strings in the string region
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        Map<String, Integer> stringOffsets = new HashMap<>();
+
+        // Index
+        int i = 0;
+        for (Offer o : offerList) {
+            writeStringReference(data, o.getTitle(), strings, stringOffsets);
+            writeStringReference(data, o.getDescription(), strings, stringOffsets);
+            writeStringReference(data, o.getImageUrl(), strings, stringOffsets);
+            data.writeDouble(o.getPrice() != null ? o.getPrice() : NO_PRICE);
+            data.writeLong(ids[i++]);
+        }
+
+        // String region
+        strings.writeTo(data);
+
+        data.flush();
+    }
+
+    /**
+     * Map an offer file into memory. The offers are decoded when they are accessed.
+     * @param file  offer file
+     * @return      read-only offerList
+     * @throws IOException  if the file is no offer file of this version or is damaged
+     */
+    static MappedOfferList map(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            if (randomAccessFile.length() >= GZIP_TRAILER_SIZE &&
+                    randomAccessFile.readUnsignedShort() == GZIP_HEADER) {
+                return new MappedOfferList(ByteBuffer.wrap(decompress(file, randomAccessFile)));
+            }
+
+            FileChannel channel = randomAccessFile.getChannel();
+            // The mapping stays valid after the file is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedOfferList(buffer);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Helper function for map. Decompress a compressed offer file directly into an array of
+     * the final size (GZIP stores the uncompressed size at the end of the file).
+     * @param file              compressed offer file
+     * @param randomAccessFile  opened offer file
+     * @return                  the decompressed file content
+     */
+    private static byte[] decompress(File file, RandomAccessFile randomAccessFile)
+            throws IOException {
+        randomAccessFile.seek(randomAccessFile.length() - 4);
+        int size = Integer.reverseBytes(randomAccessFile.readInt());
+        if (size < 0) {
+            throw new IOException("Damaged offer file");
+        }
+
+        byte[] content = new byte[size];
+        DataInputStream stream = new DataInputStream(
+                new GZIPInputStream(new FileInputStream(file), 8192));
+        try {
+            stream.readFully(content);
+            if (stream.read() != -1) {
+                throw new IOException("Damaged offer file");
+            }
+        } catch (EOFException e) {
+            throw new IOException("Damaged offer file");
+        } finally {
+            stream.close();
+        }
+        return content;
+    }
+
+    /**
+     * Helper function for write. Write offset and length of the string in the string region,
+     * add it to the region if it is not there yet.
+     * @param data          index stream
+     * @param s             string to reference
+     * @param strings       string region
+     * @param stringOffsets offset of every string in the region
+     */
+    private static void writeStringReference(DataOutputStream data, String s,
+                                             ByteArrayOutputStream strings,
+                                             Map<String, Integer> stringOffsets) throws IOException {
+        byte[] bytes = s.getBytes(CHARSET);
+
+        Integer offset = stringOffsets.get(s);
+        if (offset == null) {
+            offset = strings.size();
+            stringOffsets.put(s, offset);
+            strings.write(bytes);
+        }
+
+        data.writeInt(offset);
+        data.writeInt(bytes.length);
+    }
+}
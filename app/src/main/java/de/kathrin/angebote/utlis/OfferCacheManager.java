@@ -0,0 +1,402 @@
+package de.kathrin.angebote.utlis;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static de.kathrin.angebote.utlis.Strings.DELTA_FILE_ENDING;
+import static de.kathrin.angebote.utlis.Strings.OFFER_CACHE_FILE;
+import static de.kathrin.angebote.utlis.Strings.OFFER_FILE_ENDING;
+import static de.kathrin.angebote.utlis.Strings.PROJECT_NAME;
+import static de.kathrin.angebote.utlis.Strings.SUFFIX_FILE_ENDING;
+import static de.kathrin.angebote.utlis.Strings.TEXTFILE_ENDING;
+import static de.kathrin.angebote.utlis.Strings.VALIDATORS_FILE_ENDING;
+
+/**
+ * Keeps the stored offers of all markets within a disk budget. For every market the size of
+ * its files, the last access and the end of the period of validity are kept in a small index
+ * file, so it can be decided without reading the offer files if they are outdated.
+ * Outdated markets are deleted first. Then the sorted suffixes of the markets are deleted,
+ * they are only needed to search faster and can be built again. Then the least recently used
+ * markets are deleted until the files fit into the budget.
+ */
+public class OfferCacheManager {
+
+    private static final String LOG_TAG = PROJECT_NAME + OfferCacheManager.class.getSimpleName();
+
+    // Bytes all offer files may use together
+    private static final long DEFAULT_BUDGET_BYTES = 4 * 1024 * 1024;
+
+    // Offer snapshots are compressed when the files use more than this share of the budget,
+    // and written uncompressed again below the lower share. Compressed snapshots take about a
+    // fifth of the space, but are restored about half as fast and into the heap instead of a
+    // mapping (measured, see OfferCacheFileBenchmark), so they are only used when space is short.
+    private static final double COMPRESS_ABOVE_BUDGET_SHARE = 0.75;
+    private static final double UNCOMPRESS_BELOW_BUDGET_SHARE = 0.25;
+
+    // Files belonging to the offers of a market (legacy JSON file last, it ends the same way)
+    private static final String[] MARKET_FILE_ENDINGS = {
+            OFFER_FILE_ENDING, DELTA_FILE_ENDING, SUFFIX_FILE_ENDING, VALIDATORS_FILE_ENDING,
+            TEXTFILE_ENDING
+    };
+
+    // Not known for files of the old format
+    private static final long UNKNOWN = 0;
+
+    private static OfferCacheManager instance = null;
+
+    /**
+     * What is known about the stored offers of one market.
+     */
+    private static class Entry {
+        long size;
+        long lastAccess;
+        long availableUntil;
+    }
+
+    private final Context context;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private long budget = DEFAULT_BUDGET_BYTES;
+    private boolean compressed = false;
+
+    // Accesses are only kept in memory until the index is written the next time
+    private boolean accessesChanged = false;
+
+    /**
+     * Load the index, files that are not in there yet (e.g. written by an older version) are
+     * added with what their file system entry tells.
+     * @param context   current context
+     */
+    private OfferCacheManager(Context context) {
+        this.context = context.getApplicationContext();
+        restoreIndex();
+        addUnknownFiles();
+    }
+
+    /**
+     * @param context   current context
+     * @return          the cache manager of the process
+     */
+    public static synchronized OfferCacheManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new OfferCacheManager(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Change the number of bytes the offer files may use together. Markets are evicted
+     * immediately if they do not fit anymore.
+     * @param budget    number of bytes
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        evict(null);
+        saveIndex();
+    }
+
+    /**
+     * Check if the next offer snapshot is written compressed: only if the files use most of
+     * the budget (see COMPRESS_ABOVE_BUDGET_SHARE). Existing files are read either way and
+     * are replaced the next time the offers of their market change enough.
+     * @return  true if the offer snapshots are written compressed
+     */
+    public synchronized boolean isCompressed() {
+        long total = getTotalSize();
+        if (total > budget * COMPRESS_ABOVE_BUDGET_SHARE) {
+            compressed = true;
+        } else if (total < budget * UNCOMPRESS_BELOW_BUDGET_SHARE) {
+            compressed = false;
+        }
+        return compressed;
+    }
+
+    /**
+     * @return  number of bytes used by the offer files of all markets
+     */
+    public synchronized long getTotalSize() {
+        long total = 0;
+        for (Entry e : entries.values()) {
+            total += e.size;
+        }
+        return total;
+    }
+
+    /**
+     * Check, without reading the offer file, if the stored offers of the market are outdated.
+     * @param marketId  market of the offers
+     * @return          true if the period of validity is over, false if it is unknown
+     */
+    synchronized boolean isOutdated(String marketId) {
+        Entry e = entries.get(marketId);
+        return e != null && e.availableUntil != UNKNOWN &&
+                e.availableUntil < System.currentTimeMillis();
+    }
+
+    /**
+     * The offers of a market were read. Only noted in memory (this is called on every
+     * search), the index is written with the next write of offers or by saveAccesses.
+     * @param marketId  market of the offers
+     */
+    synchronized void recordAccess(String marketId) {
+        Entry e = entries.get(marketId);
+        if (e != null) {
+            e.lastAccess = System.currentTimeMillis();
+            accessesChanged = true;
+        }
+    }
+
+    /**
+     * @return  true if accesses were noted since the index was written the last time
+     */
+    synchronized boolean hasUnsavedAccesses() {
+        return accessesChanged;
+    }
+
+    /**
+     * Write the accesses noted since the index was written the last time (e.g. before the
+     * process may be stopped).
+     */
+    synchronized void saveAccesses() {
+        if (accessesChanged) {
+            saveIndex();
+        }
+    }
+
+    /**
+     * The offers of a market were written. Other markets are evicted, if the files do not
+     * fit into the budget anymore (never the written one).
+     * @param marketId          market of the offers
+     * @param availableUntil    end of the period of validity of the offers
+     */
+    synchronized void recordWrite(String marketId, Date availableUntil) {
+        Entry e = entries.get(marketId);
+        if (e == null) {
+            e = new Entry();
+            entries.put(marketId, e);
+        }
+        e.size = getMarketSize(marketId);
+        e.lastAccess = System.currentTimeMillis();
+        e.availableUntil = availableUntil != null ? availableUntil.getTime() : UNKNOWN;
+
+        evict(marketId);
+        saveIndex();
+    }
+
+    /**
+     * The offers of a market were deleted.
+     * @param marketId  market of the offers
+     */
+    synchronized void recordDelete(String marketId) {
+        if (entries.remove(marketId) != null) {
+            saveIndex();
+        }
+    }
+
+
+    // PRIVATE HELPER FUNCTIONS
+
+    /**
+     * Helper function. Delete outdated markets, then sorted suffixes and then the least
+     * recently used markets until the files fit into the budget.
+     * @param keptMarketId  market that is never evicted or null
+     */
+    private void evict(String keptMarketId) {
+        long now = System.currentTimeMillis();
+        long total = 0;
+
+        List<String> outdated = new ArrayList<>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            if (!e.getKey().equals(keptMarketId) &&
+                    entry.availableUntil != UNKNOWN && entry.availableUntil < now) {
+                outdated.add(e.getKey());
+            } else {
+                total += entry.size;
+            }
+        }
+        for (String marketId : outdated) {
+            deleteMarket(marketId, "outdated");
+        }
+
+        if (total > budget) {
+            total = dropSuffixFiles(total, keptMarketId);
+        }
+
+        while (total > budget) {
+            String leastRecentlyUsed = null;
+            long oldestAccess = Long.MAX_VALUE;
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                if (!e.getKey().equals(keptMarketId) && e.getValue().lastAccess < oldestAccess) {
+                    leastRecentlyUsed = e.getKey();
+                    oldestAccess = e.getValue().lastAccess;
+                }
+            }
+            if (leastRecentlyUsed == null) {
+                break;
+            }
+            total -= entries.get(leastRecentlyUsed).size;
+            deleteMarket(leastRecentlyUsed, "least recently used");
+        }
+    }
+
+    /**
+     * Helper function for evict. Delete the sorted suffixes of the markets, least recently used
+     * first, until the files fit into the budget. The suffixes of the kept market are deleted
+     * last (the next search sorts them again, the offers would have to be requested again).
+     * @param total         number of bytes used by the files of all markets
+     * @param keptMarketId  market of which the suffixes are deleted last or null
+     * @return              number of bytes used afterwards
+     */
+    private long dropSuffixFiles(long total, final String keptMarketId) {
+        List<String> marketIds = new ArrayList<>(entries.keySet());
+        Collections.sort(marketIds, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                boolean keptA = a.equals(keptMarketId);
+                if (keptA != b.equals(keptMarketId)) {
+                    return keptA ? 1 : -1;
+                }
+                long accessA = entries.get(a).lastAccess;
+                long accessB = entries.get(b).lastAccess;
+                return accessA < accessB ? -1 : (accessA == accessB ? 0 : 1);
+            }
+        });
+
+        for (String marketId : marketIds) {
+            if (total <= budget) {
+                break;
+            }
+            String filename = marketId + SUFFIX_FILE_ENDING;
+            long size = context.getFileStreamPath(filename).length();
+            if (size > 0 && context.deleteFile(filename)) {
+                Log.v(LOG_TAG, "Dropping sorted suffixes of market " + marketId);
+                Entry e = entries.get(marketId);
+                e.size = Math.max(0, e.size - size);
+                total -= size;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Helper function for evict. Delete all files of a market.
+     * @param marketId  market of the offers
+     * @param reason    why the market is deleted (for the log)
+     */
+    private void deleteMarket(String marketId, String reason) {
+        Log.v(LOG_TAG, "Evicting offers of market " + marketId + " (" + reason + ")");
+
+        for (String ending : MARKET_FILE_ENDINGS) {
+            context.deleteFile(marketId + ending);
+        }
+        entries.remove(marketId);
+    }
+
+    /**
+     * Helper function. Sum up the size of all files of a market.
+     * @param marketId  market of the offers
+     * @return          number of bytes
+     */
+    private long getMarketSize(String marketId) {
+        long size = 0;
+        for (String ending : MARKET_FILE_ENDINGS) {
+            size += context.getFileStreamPath(marketId + ending).length();
+        }
+        return size;
+    }
+
+    /**
+     * Helper function for the constructor. Add the markets of offer files that are not in
+     * the index. The last modification is used as last access.
+     */
+    private void addUnknownFiles() {
+        String[] files = context.fileList();
+        if (files == null) {
+            return;
+        }
+
+        boolean changed = false;
+        for (String filename : files) {
+            String marketId = getMarketId(filename);
+            if (marketId != null && !entries.containsKey(marketId)) {
+                Entry e = new Entry();
+                e.size = getMarketSize(marketId);
+                e.lastAccess = context.getFileStreamPath(filename).lastModified();
+                e.availableUntil = UNKNOWN;
+                entries.put(marketId, e);
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            saveIndex();
+        }
+    }
+
+    /**
+     * Helper function for addUnknownFiles. Get the market of an offer file.
+     * @param filename  name of any file of the app
+     * @return          the market ID, null if it is no offer file
+     */
+    private static String getMarketId(String filename) {
+        for (String ending : MARKET_FILE_ENDINGS) {
+            if (filename.endsWith(ending)) {
+                String marketId = filename.substring(0, filename.length() - ending.length());
+                // Other files of the app end with .txt too, market IDs are numbers
+                if (marketId.matches("[0-9]+")) {
+                    return marketId;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Helper function. Write the index: one line per market with the market ID, size,
+     * last access and end of the period of validity.
+     */
+    private void saveIndex() {
+        StringBuilder index = new StringBuilder();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            index.append(e.getKey()).append(';')
+                    .append(e.getValue().size).append(';')
+                    .append(e.getValue().lastAccess).append(';')
+                    .append(e.getValue().availableUntil).append('\n');
+        }
+        IOUtils.saveStringInFile(context, index.toString(), OFFER_CACHE_FILE);
+        accessesChanged = false;
+    }
+
+    /**
+     * Helper function for the constructor. Read the index, broken lines are skipped.
+     */
+    private void restoreIndex() {
+        if (!context.getFileStreamPath(OFFER_CACHE_FILE).exists()) {
+            return;
+        }
+
+        for (String line : IOUtils.restoreStringFromFile(context, OFFER_CACHE_FILE).split("\n")) {
+            String[] fields = line.split(";");
+            if (fields.length != 4) {
+                continue;
+            }
+            try {
+                Entry e = new Entry();
+                e.size = Long.parseLong(fields[1]);
+                e.lastAccess = Long.parseLong(fields[2]);
+                e.availableUntil = Long.parseLong(fields[3]);
+                entries.put(fields[0], e);
+            } catch (NumberFormatException e) {
+                Log.e(LOG_TAG, "NumberFormatException: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package de.kathrin.angebote.utlis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import de.kathrin.angebote.models.Offer;
+import de.kathrin.angebote.models.OfferDiff;
+
+/**
+ * File format of the changes of a market's offers since its base snapshot
+ * ({@link OfferCacheFile}). Every refresh that changed something appends one record.
+ *
+ *  Header:         magic number, version, generation of the base snapshot
+ *  Records:        length of the record, available from, available until (ms),
+ *                  removed ids, added offers (id, position and fields),
+ *                  changed offers (id and fields)
+ *  Fields:         texts as length and UTF-8 bytes (length -1 if there is none),
+ *                  price behind a flag whether there is one
+ *
+ * A record that was not written completely is ignored when the file is read.
+ */
+class OfferDeltaFile {
+
+    static final int MAGIC = 0x414E4744;   // "ANGD"
+    static final int VERSION = 2;
+
+    static final int HEADER_SIZE = 4 + 4 + 8;
+
+    private static final int NO_STRING = -1;
+
+    /**
+     * Write the header of a new delta file.
+     * @param out           stream to write to (not closed)
+     * @param generation    generation of the base snapshot the changes refer to
+     */
+    static void writeHeader(OutputStream out, long generation) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeLong(generation);
+        data.flush();
+    }
+
+    /**
+     * Encode the changes of one refresh as a record that can be appended to the delta file.
+     * @param diff  changes of the refresh
+     * @return      the record
+     */
+    static byte[] encodeRecord(OfferDiff diff) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(content);
+
+        data.writeLong(diff.getAvailableFrom().getTime());
+        data.writeLong(diff.getAvailableUntil().getTime());
+
+        data.writeInt(diff.getRemovedIds().size());
+        for (long id : diff.getRemovedIds()) {
+            data.writeLong(id);
+        }
+        data.writeInt(diff.getAdded().size());
+        for (int i = 0; i < diff.getAdded().size(); i++) {
+            data.writeLong(diff.getAddedIds().get(i));
+            data.writeInt(diff.getAddedPositions().get(i));
+            writeOffer(data, diff.getAdded().get(i));
+        }
+        data.writeInt(diff.getChanged().size());
+        for (int i = 0; i < diff.getChanged().size(); i++) {
+            data.writeLong(diff.getChangedIds().get(i));
+            writeOffer(data, diff.getChanged().get(i));
+        }
+        data.flush();
+
+        // Prefix the length, so a record that was cut off can be recognized
+        ByteArrayOutputStream record = new ByteArrayOutputStream(content.size() + 4);
+        DataOutputStream recordData = new DataOutputStream(record);
+        recordData.writeInt(content.size());
+        content.writeTo(recordData);
+        recordData.flush();
+
+        return record.toByteArray();
+    }
+
+    /**
+     * Read all records of a delta file.
+     * @param content       content of the delta file
+     * @param generation    generation of the base snapshot
+     * @return              changes in the order they were written, null if the file does not
+     *                      belong to the base snapshot
+     */
+    static List<OfferDiff> read(byte[] content, long generation) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(content));
+
+        if (content.length < HEADER_SIZE || data.readInt() != MAGIC ||
+                data.readInt() != VERSION || data.readLong() != generation) {
+            return null;
+        }
+
+        List<OfferDiff> diffs = new ArrayList<>();
+        int position = HEADER_SIZE;
+
+        while (position + 4 <= content.length) {
+            int length = data.readInt();
+            if (length < 0 || position + 4 + length > content.length) {
+                // Record was not written completely
+                break;
+            }
+            try {
+                diffs.add(readRecord(data));
+            } catch (EOFException e) {
+                throw new IOException("Damaged record in delta file");
+            }
+            position += 4 + length;
+        }
+
+        return diffs;
+    }
+
+    /**
+     * Helper function for encodeRecord. Write the fields of one offer.
+     * @param data  stream to write to
+     * @param o     offer to write
+     */
+    private static void writeOffer(DataOutputStream data, Offer o) throws IOException {
+        writeString(data, o.getTitle());
+        data.writeBoolean(o.getPrice() != null);
+        if (o.getPrice() != null) {
+            data.writeDouble(o.getPrice());
+        }
+        writeString(data, o.getDescription());
+        writeString(data, o.getImageUrl());
+    }
+
+    /**
+     * Helper function for writeOffer. Unlike writeUTF, there is no limit of 64 KB.
+     * @param data  stream to write to
+     * @param s     string to write, may be null
+     */
+    private static void writeString(DataOutputStream data, String s) throws IOException {
+        if (s == null) {
+            data.writeInt(NO_STRING);
+            return;
+        }
+        byte[] bytes = s.getBytes(OfferCacheFile.CHARSET);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    /**
+     * Helper function for read. Read one record (without its length).
+     * @param data  stream positioned in front of the record
+     * @return      changes of the record
+     */
+    private static OfferDiff readRecord(DataInputStream data) throws IOException {
+        OfferDiff diff = new OfferDiff(new Date(data.readLong()), new Date(data.readLong()));
+
+        int removedCount = data.readInt();
+        for (int i = 0; i < removedCount; i++) {
+            diff.addRemoved(data.readLong());
+        }
+
+        int addedCount = data.readInt();
+        for (int i = 0; i < addedCount; i++) {
+            long id = data.readLong();
+            int position = data.readInt();
+            diff.addAdded(id, position, readOffer(data));
+        }
+
+        int changedCount = data.readInt();
+        for (int i = 0; i < changedCount; i++) {
+            long id = data.readLong();
+            diff.addChanged(id, readOffer(data));
+        }
+
+        return diff;
+    }
+
+    /**
+     * Helper function for readRecord. Read the fields of one offer.
+     * @param data  stream positioned in front of the offer
+     * @return      offer instance
+     */
+    private static Offer readOffer(DataInputStream data) throws IOException {
+        String title = readString(data);
+        Double price = data.readBoolean() ? data.readDouble() : null;
+        String description = readString(data);
+        String imageUrl = readString(data);
+        return new Offer(title, price, description, imageUrl);
+    }
+
+    /**
+     * Helper function for readOffer.
+     * @param data  stream positioned in front of the string
+     * @return      the string, null if there is none
+     */
+    private static String readString(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        if (length == NO_STRING) {
+            return null;
+        }
+        // The record is in memory, a damaged length must not allocate more than is left
+        if (length < 0 || length > data.available()) {
+            throw new EOFException();
+        }
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return new String(bytes, OfferCacheFile.CHARSET);
+    }
+}
@@ -0,0 +1,42 @@
+package de.kathrin.angebote.utlis;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import static de.kathrin.angebote.utlis.Strings.PROJECT_NAME;
+
+/**
+ * Writes the received offers that are still queued (see {@link OfferWriteQueue}) when the app
+ * leaves the foreground. The activity only sends the broadcast (see
+ * {@link OfferUtils#startOfferFlush}), the waiting happens on a background thread of the
+ * receiver: while it runs, the system keeps the process alive.
+ */
+public class OfferFlushReceiver extends BroadcastReceiver {
+
+    private static final String LOG_TAG = PROJECT_NAME + OfferFlushReceiver.class.getSimpleName();
+
+    // Time to wait for the writes (the system allows a receiver about ten seconds)
+    private static final long FLUSH_TIMEOUT_MS = 5 * 1000;
+
+    @Override
+    public void onReceive(final Context context, Intent intent) {
+
+        // Keep the receiver alive until the offers are written
+        final PendingResult pendingResult = goAsync();
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!OfferUtils.flushOfferWrites(context, FLUSH_TIMEOUT_MS)) {
+                        Log.v(LOG_TAG, "Offers not written within " + FLUSH_TIMEOUT_MS + " ms");
+                    }
+                } finally {
+                    pendingResult.finish();
+                }
+            }
+        }).start();
+    }
+}
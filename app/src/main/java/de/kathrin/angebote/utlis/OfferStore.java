@@ -0,0 +1,424 @@
+package de.kathrin.angebote.utlis;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import de.kathrin.angebote.models.Market;
+import de.kathrin.angebote.models.Offer;
+import de.kathrin.angebote.models.OfferDiff;
+import de.kathrin.angebote.models.OfferList;
+
+import static de.kathrin.angebote.utlis.Strings.DELTA_FILE_ENDING;
+import static de.kathrin.angebote.utlis.Strings.OFFER_FILE_ENDING;
+import static de.kathrin.angebote.utlis.Strings.PROJECT_NAME;
+
+/**
+ * Stores the offers of a market as a base snapshot ({@link OfferCacheFile}) and the changes
+ * of the following refreshes ({@link OfferDeltaFile}). Most offers stay the same from one
+ * week to the next, so a refresh usually only appends a small record instead of rewriting
+ * the whole file. After some refreshes the changes are compacted into a new snapshot.
+ *
+ * Every offer has an id derived from its title and image, so the same offer keeps its id
+ * between two refreshes even if its price or description changed.
+ */
+class OfferStore {
+
+    private static final String LOG_TAG = PROJECT_NAME + OfferStore.class.getSimpleName();
+
+    // Number of delta records after which a new snapshot is written
+    private static final int MAX_DELTAS = 4;
+
+    // FNV-1a (64 bit)
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Hashed instead of the price of offers without one (a NaN that doubleToLongBits never returns)
+    private static final long NO_PRICE_BITS = 0x7ff8000000000001L;
+
+    private static final Random generations = new Random();
+
+    /**
+     * Offers of a market as restored from the snapshot and its changes.
+     */
+    private static class Snapshot {
+        final OfferList offers;
+        final long[] ids;
+        final long generation;
+        final int deltaCount;
+
+        Snapshot(OfferList offers, long[] ids, long generation, int deltaCount) {
+            this.offers = offers;
+            this.ids = ids;
+            this.generation = generation;
+            this.deltaCount = deltaCount;
+        }
+    }
+
+    /**
+     * @param context   current context
+     * @param market    market of the offers
+     * @return          true if offers of the market are stored
+     */
+    static boolean exists(Context context, Market market) {
+        return context.getFileStreamPath(getSnapshotFilename(market)).exists();
+    }
+
+    /**
+     * Restore the stored offers of a market (snapshot with all changes applied).
+     * @param context   current context
+     * @param market    market of the offers
+     * @return          offerList instance
+     * @throws IOException  if the files are missing or not readable
+     */
+    static OfferList restore(Context context, Market market) throws IOException {
+        return restoreSnapshot(context, market).offers;
+    }
+
+    /**
+     * Store the new offers of a market. Only the changes to the stored offers are written,
+     * unless it is time for a new snapshot.
+     * @param context   current context
+     * @param market    market of the offers
+     * @param offerList new offers
+     * @return          the changes to the stored offers, null if there were no stored offers
+     */
+    static OfferDiff save(Context context, Market market, OfferList offerList) throws IOException {
+        long[] ids = createIds(offerList);
+
+        Snapshot old = null;
+        if (exists(context, market)) {
+            try {
+                old = restoreSnapshot(context, market);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "IOException: " + e.getMessage());
+            }
+        }
+
+        if (old == null) {
+            saveSnapshot(context, market, offerList, ids);
+            return null;
+        }
+
+        OfferDiff diff = createDiff(old, offerList, ids);
+
+        if (diff.isEmpty()
+                && old.offers.getAvailableFromTime().equals(offerList.getAvailableFromTime())
+                && old.offers.getAvailableUntilTime().equals(offerList.getAvailableUntilTime())) {
+            return diff;
+        }
+
+        File deltaFile = context.getFileStreamPath(getDeltaFilename(market));
+        File snapshotFile = context.getFileStreamPath(getSnapshotFilename(market));
+        byte[] record = OfferDeltaFile.encodeRecord(diff);
+
+        // Compact if there are many changes or they are as big as half of the snapshot.
+        // A change record only knows where offers were added, so a new order of the offers
+        // needs a new snapshot as well.
+        if (old.deltaCount >= MAX_DELTAS ||
+                deltaFile.length() + record.length > snapshotFile.length() / 2 ||
+                !keepsOrder(old, ids)) {
+            saveSnapshot(context, market, offerList, ids);
+        } else {
+            // First change of the snapshot: (re)start the delta file, drops unusable leftovers
+            if (old.deltaCount == 0) {
+                OutputStream stream = context.openFileOutput(getDeltaFilename(market),
+                        Context.MODE_PRIVATE);
+                try {
+                    OfferDeltaFile.writeHeader(stream, old.generation);
+                } finally {
+                    stream.close();
+                }
+            }
+            IOUtils.appendToFile(context, getDeltaFilename(market), record);
+        }
+
+        return diff;
+    }
+
+    /**
+     * Delete all stored offers of a market.
+     * @param context   current context
+     * @param market    market of the offers
+     */
+    static void delete(Context context, Market market) {
+        context.deleteFile(getSnapshotFilename(market));
+        context.deleteFile(getDeltaFilename(market));
+    }
+
+    /**
+     * Create the id of every offer in the list: a hash of the title and the image URL.
+     * Offers with the same title and image get different ids depending on their order.
+     * @param offers    offers of one market
+     * @return          id of every offer
+     */
+    static long[] createIds(List<Offer> offers) {
+        long[] ids = new long[offers.size()];
+        Set<Long> usedIds = new HashSet<>();
+
+        for (int i = 0; i < ids.length; i++) {
+            Offer o = offers.get(i);
+            long id = hash(hash(FNV_OFFSET_BASIS, o.getTitle()), o.getImageUrl());
+
+            while (!usedIds.add(id)) {
+                id = id * FNV_PRIME + 1;
+            }
+            ids[i] = id;
+        }
+
+        return ids;
+    }
+
+
+    // PRIVATE HELPER FUNCTIONS
+
+    /**
+     * Helper function for restore and save. Map the snapshot and apply the changes.
+     * @param context   current context
+     * @param market    market of the offers
+     * @return          offers with their ids
+     */
+    private static Snapshot restoreSnapshot(Context context, Market market) throws IOException {
+        MappedOfferList base = restoreBase(context, market);
+
+        List<OfferDiff> diffs = null;
+        if (context.getFileStreamPath(getDeltaFilename(market)).exists()) {
+            diffs = OfferDeltaFile.read(
+                    IOUtils.restoreBytesFromFile(context, getDeltaFilename(market)),
+                    base.getGeneration());
+        }
+
+        // No changes (or they belong to an older snapshot), use the mapped file directly
+        if (diffs == null || diffs.isEmpty()) {
+            long[] ids = new long[base.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = base.getId(i);
+            }
+            return new Snapshot(base, ids, base.getGeneration(), 0);
+        }
+
+        // Offers of the snapshot are only decoded when they are accessed
+        long[] ids = new long[base.size()];
+        Map<Long, Offer> offers = new HashMap<>();
+        for (int i = 0; i < base.size(); i++) {
+            ids[i] = base.getId(i);
+            offers.put(ids[i], base.get(i));
+        }
+
+        for (OfferDiff diff : diffs) {
+            for (long id : diff.getRemovedIds()) {
+                offers.remove(id);
+            }
+            for (int i = 0; i < diff.getChanged().size(); i++) {
+                offers.put(diff.getChangedIds().get(i), diff.getChanged().get(i));
+            }
+            ids = applyOrder(ids, offers, diff);
+        }
+
+        OfferDiff last = diffs.get(diffs.size() - 1);
+        OfferList offerList = new OfferList();
+        offerList.setAvailableFrom(last.getAvailableFrom());
+        offerList.setAvailableUntil(last.getAvailableUntil());
+
+        for (long id : ids) {
+            offerList.add(offers.get(id));
+        }
+
+        return new Snapshot(offerList, ids, base.getGeneration(), diffs.size());
+    }
+
+    /**
+     * Helper function for restoreSnapshot. Order of the offers after a change: the remaining
+     * offers keep their order (see keepsOrder), the added ones are put at their positions.
+     * @param ids       ids of the offers before the change
+     * @param offers    offers by id, the removed ones are already dropped
+     * @param diff      the change
+     * @return          ids of the offers after the change
+     */
+    private static long[] applyOrder(long[] ids, Map<Long, Offer> offers, OfferDiff diff) {
+        List<Long> addedIds = diff.getAddedIds();
+        List<Integer> addedPositions = diff.getAddedPositions();
+        for (int i = 0; i < addedIds.size(); i++) {
+            offers.put(addedIds.get(i), diff.getAdded().get(i));
+        }
+
+        long[] newIds = new long[ids.length - diff.getRemovedIds().size() + addedIds.size()];
+        int size = 0;
+        int added = 0;
+        for (long id : ids) {
+            // Positions are ascending, every offer is inserted where it was in the new list
+            while (added < addedIds.size() && addedPositions.get(added) <= size) {
+                newIds[size++] = addedIds.get(added++);
+            }
+            // Removed ones are not in the map anymore
+            if (offers.containsKey(id)) {
+                newIds[size++] = id;
+            }
+        }
+        while (added < addedIds.size()) {
+            newIds[size++] = addedIds.get(added++);
+        }
+
+        return size == newIds.length ? newIds : Arrays.copyOf(newIds, size);
+    }
+
+    /**
+     * Helper function for save. Check if the offers that are stored and new have the same
+     * order in both lists.
+     * @param old   stored offers
+     * @param ids   ids of the new offers
+     * @return      true if no offer moved in front of another one
+     */
+    private static boolean keepsOrder(Snapshot old, long[] ids) {
+        Map<Long, Integer> oldPositions = new HashMap<>();
+        for (int i = 0; i < old.ids.length; i++) {
+            oldPositions.put(old.ids[i], i);
+        }
+
+        int lastPosition = -1;
+        for (long id : ids) {
+            Integer oldPosition = oldPositions.get(id);
+            if (oldPosition != null) {
+                if (oldPosition < lastPosition) {
+                    return false;
+                }
+                lastPosition = oldPosition;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper function for save. Compare the stored offers with the new ones.
+     * @param old       stored offers
+     * @param offerList new offers
+     * @param ids       ids of the new offers
+     * @return          changes from the stored to the new offers
+     */
+    private static OfferDiff createDiff(Snapshot old, OfferList offerList, long[] ids) {
+        OfferDiff diff = new OfferDiff(new Date(offerList.getAvailableFromTime()),
+                offerList.getAvailableUntil());
+
+        Map<Long, Integer> oldPositions = new HashMap<>();
+        for (int i = 0; i < old.ids.length; i++) {
+            oldPositions.put(old.ids[i], i);
+        }
+
+        for (int i = 0; i < ids.length; i++) {
+            Integer oldPosition = oldPositions.remove(ids[i]);
+            Offer o = offerList.get(i);
+
+            if (oldPosition == null) {
+                diff.addAdded(ids[i], i, o);
+            } else if (contentHash(old.offers.get(oldPosition)) != contentHash(o)) {
+                diff.addChanged(ids[i], o);
+            }
+        }
+
+        // All offers that were not found again are removed
+        for (long id : old.ids) {
+            if (oldPositions.containsKey(id)) {
+                diff.addRemoved(id);
+            }
+        }
+
+        return diff;
+    }
+
+    /**
+     * Helper function for save. Write a new snapshot and delete the changes of the old one.
+     * @param context   current context
+     * @param market    market of the offers
+     * @param offerList offers to save
+     * @param ids       ids of the offers
+     */
+    private static void saveSnapshot(Context context, Market market, final OfferList offerList,
+                                     final long[] ids) throws IOException {
+        final long generation = generations.nextLong();
+
+        IOUtils.saveInFile(context, getSnapshotFilename(market), new IOUtils.StreamWriter() {
+            @Override
+            public void writeStream(OutputStream stream) throws IOException {
+                OfferCacheFile.write(stream, offerList, ids, generation);
+            }
+        }, OfferCacheManager.getInstance(context).isCompressed());
+
+        // The changes belong to the old generation now (and would be ignored anyway)
+        context.deleteFile(getDeltaFilename(market));
+    }
+
+    /**
+     * Helper function. Map the snapshot file of a market.
+     * @param context   current context
+     * @param market    market of the offers
+     * @return          mapped offers
+     */
+    private static MappedOfferList restoreBase(Context context, Market market) throws IOException {
+        return OfferCacheFile.map(context.getFileStreamPath(getSnapshotFilename(market)));
+    }
+
+    /**
+     * Helper function for createDiff. Hash of all fields of an offer.
+     * @param o offer
+     * @return  hash
+     */
+    private static long contentHash(Offer o) {
+        long hash = hash(FNV_OFFSET_BASIS, o.getTitle());
+        hash = hash(hash, o.getDescription());
+        hash = hash(hash, o.getImageUrl());
+
+        // Offers without a price are accepted by the parser
+        long price = o.getPrice() != null ? Double.doubleToLongBits(o.getPrice()) : NO_PRICE_BITS;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash ^ ((price >>> (i * 8)) & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Helper function. Continue a FNV-1a hash with the characters of a string
+     * (followed by a separator, so "ab" + "c" differs from "a" + "bc").
+     * @param hash      hash so far
+     * @param string    string to add
+     * @return          new hash
+     */
+    private static long hash(long hash, String string) {
+        if (string != null) {
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+                hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+            }
+        }
+        return (hash ^ 0xff) * FNV_PRIME;
+    }
+
+    /**
+     * Get the filename, where the snapshot of a market's offers is saved.
+     * @param m     market which offers are searched
+     * @return      filename
+     */
+    private static String getSnapshotFilename (Market m) {
+        return m.getMarketID() + OFFER_FILE_ENDING;
+    }
+
+    /**
+     * Get the filename, where the changes to the snapshot of a market's offers are saved.
+     * @param m     market which offers are searched
+     * @return      filename
+     */
+    private static String getDeltaFilename (Market m) {
+        return m.getMarketID() + DELTA_FILE_ENDING;
+    }
+}
@@ -1,28 +1,52 @@
 package de.kathrin.angebote.utlis;
 
 import android.content.Context;
-import android.text.Html;
+import android.content.Intent;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
 
+import de.kathrin.angebote.models.ColumnarOfferList;
 import de.kathrin.angebote.models.Market;
 import de.kathrin.angebote.models.Offer;
+import de.kathrin.angebote.models.OfferDiff;
+import de.kathrin.angebote.models.OfferIndex;
 import de.kathrin.angebote.models.OfferList;
+import de.kathrin.angebote.models.SuffixIndex;
 
 import static de.kathrin.angebote.utlis.Strings.PROJECT_NAME;
+import static de.kathrin.angebote.utlis.Strings.SUFFIX_FILE_ENDING;
 import static de.kathrin.angebote.utlis.Strings.TEXTFILE_ENDING;
 import static de.kathrin.angebote.utlis.Strings.URL_EDEKA_OFFERS;
+import static de.kathrin.angebote.utlis.Strings.UTF8;
+import static de.kathrin.angebote.utlis.Strings.VALIDATORS_FILE_ENDING;
 
 public class OfferUtils {
 
     private static final String LOG_TAG = PROJECT_NAME + OfferUtils.class.getSimpleName();
 
+    // Reads the offers directly from the server response (or an old offer file), no string in between
+    private static final IOUtils.StreamHandler<OfferList> OFFER_LIST_READER =
+            new IOUtils.StreamHandler<OfferList>() {
+                @Override
+                public OfferList handleStream(InputStream stream) throws IOException {
+                    return createOfferListFromStream(stream);
+                }
+            };
+
+    // Offer requests currently running, by market ID
+    private static final SingleFlight<OfferList> runningRequests =
+            new SingleFlight<>(Executors.newCachedThreadPool());
+
     //      PUBLIC FUNCTIONS
 
     /**
@@ -31,140 +55,481 @@ public class OfferUtils {
      * @return          server response
      */
     public static OfferList requestOffersFromServer(Context context, Market market) throws IOException {
-        Log.v(LOG_TAG, "Request Offers from Server.");
-
-        // Compose URL with market ID
-        String url = URL_EDEKA_OFFERS + "marketId=" + market.getMarketID() + "&limit=89899";
-
-        // Request URL
-        String jsonString = IOUtils.requestFromServer(url, "GET", null);
-
-        OfferList offerList = null;
+        return requestOffersFromServer(context, market, null);
+    }
 
-        if (jsonString != null) {
-            offerList = createOfferListFromJSONString(jsonString);
-            saveOffersListInFile(context, offerList, getOfferFilename(market));
-            Log.v(LOG_TAG, "Stored offers in file");
-        } else {
-            Log.v(LOG_TAG, "Nothing received.");
-        }
-        return offerList;
+    /**
+     * Request all offers from one market from the server. If the offers did not change since
+     * the last request (server answers 304), the local offers are used instead.
+     * If the offers of the market are already requested (e.g. by the alarm and a search at the
+     * same time), no new request is made: the caller waits for the running one and gets the
+     * same offerList (see {@link SingleFlight}). Interrupting a caller only ends its own wait.
+     * @param context       current context
+     * @param market        market that is used
+     * @param localOffers   offers of the market that are already loaded (may be outdated) or
+     *                      null, then they are restored from the file if necessary
+     * @return              server response
+     */
+    public static OfferList requestOffersFromServer(final Context context, final Market market,
+                                                    final OfferList localOffers) throws IOException {
+        return runningRequests.run(market.getMarketID(), new Callable<OfferList>() {
+            @Override
+            public OfferList call() throws IOException {
+                return fetchOffersFromServer(context, market, localOffers);
+            }
+        });
     }
 
     /**
      * Take a file (found by the market id) and convert the content into an offerList instance.
-     * (Combine restoreStringFromFile and createOfferListFromJSONString.)
+     * The file is memory mapped, the offers are only decoded when they are accessed.
+     * The changes of the last refreshes are applied (see {@link OfferStore}).
+     * Files of the old JSON format are converted into the binary format.
      * @param context   current context
      * @param market    market of which the offers are restored
      * @return          offerList instance
      */
     public static OfferList restoreOffersFromFile(Context context, Market market) {
 
-        String filename = getOfferFilename(market);
+        // Offers that are not written yet are newer than the file
+        OfferWriteQueue.PendingWrite pendingWrite =
+                OfferWriteQueue.getInstance().getPending(market.getMarketID());
+        if (pendingWrite != null) {
+            return pendingWrite.offerList;
+        }
 
-        if (context.getFileStreamPath(filename).exists()) {
-            return createOfferListFromJSONString(IOUtils.restoreStringFromFile(context, filename));
+        if (OfferStore.exists(context, market)) {
+            try {
+                OfferList offerList = OfferStore.restore(context, market);
+                OfferCacheManager.getInstance(context).recordAccess(market.getMarketID());
+                return offerList;
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "IOException: " + e.getMessage());
+            }
+        } else if (context.getFileStreamPath(getLegacyOfferFilename(market)).exists()) {
+            return migrateLegacyOfferFile(context, market);
         }
         return null;
     }
 
+    /**
+     * Check if the stored offers of a market are outdated, without reading them.
+     * @param context   current context
+     * @param market    market of the offers
+     * @return          true if the period of validity of the stored offers is over
+     */
+    public static boolean isOfferFileOutdated(Context context, Market market) {
+        OfferWriteQueue.PendingWrite pendingWrite =
+                OfferWriteQueue.getInstance().getPending(market.getMarketID());
+        if (pendingWrite != null) {
+            return pendingWrite.offerList.getAvailableUntil().before(new Date());
+        }
+        return OfferCacheManager.getInstance(context).isOutdated(market.getMarketID());
+    }
+
+    /**
+     * Start writing the received offers that are not written yet, without waiting (e.g. when
+     * the activity is stopped, on the UI thread). The {@link OfferFlushReceiver} waits for
+     * them in the background and keeps the process alive meanwhile.
+     * @param context   current context
+     */
+    public static void startOfferFlush(Context context) {
+        if (OfferWriteQueue.getInstance().hasPending() ||
+                OfferCacheManager.getInstance(context).hasUnsavedAccesses()) {
+            context.sendBroadcast(new Intent(context, OfferFlushReceiver.class));
+        }
+    }
+
+    /**
+     * Wait until the received offers are written into the files (e.g. before the app may be
+     * stopped, never on the UI thread). Offers are written on a background thread, see {@link OfferWriteQueue}.
+     * The noted accesses of the cached offers are written as well (see
+     * {@link OfferCacheManager#recordAccess}).
+     * @param context   current context
+     * @param timeoutMs maximum time to wait
+     * @return          true if all offers are written
+     */
+    public static boolean flushOfferWrites(Context context, long timeoutMs) {
+        boolean written = OfferWriteQueue.getInstance().flush(timeoutMs);
+        OfferCacheManager.getInstance(context).saveAccesses();
+        return written;
+    }
+
+    /**
+     * Prepare the search in the offers of a market: the sorted suffixes of the offers' texts
+     * (see {@link SuffixIndex}) are restored from the file of the market, or sorted and saved
+     * there if the file is missing or belongs to other offers. The file is written in the
+     * background, after the offers waiting to be written (see {@link OfferWriteQueue}).
+     * @param context   current context
+     * @param market    market the offers belong to
+     * @param offerList offers of the market
+     */
+    public static void prepareOfferSearch(Context context, final Market market,
+                                          final OfferList offerList) {
+        OfferIndex index = offerList.getIndex();
+        if (index.hasSuffixIndex()) {
+            return;
+        }
+
+        File file = context.getFileStreamPath(getSuffixFilename(market));
+        if (file.exists()) {
+            try {
+                SuffixIndex suffixIndex = SuffixIndexFile.read(file, offerList);
+                if (suffixIndex != null) {
+                    index.setSuffixIndex(suffixIndex);
+                    return;
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "IOException: " + e.getMessage());
+            }
+        }
+
+        final SuffixIndex suffixIndex = index.getSuffixIndex();
+        final Context appContext = context.getApplicationContext();
+
+        OfferWriteQueue.getInstance().enqueueWrite(new Runnable() {
+            @Override
+            public void run() {
+                saveSuffixIndex(appContext, market, offerList, suffixIndex);
+            }
+        });
+    }
+
 
     // PRIVATE HELPER FUNCTIONS
 
     /**
-     * Convert JSON String into an offerList instance.
-     * @param jsonString string to convert
+     * Helper function for prepareOfferSearch (on the write thread). Save the sorted suffixes
+     * of the offers in the file of the market.
+     * @param context       current context
+     * @param market        market the offers belong to
+     * @param offerList     offers of the market
+     * @param suffixIndex   sorted suffixes of the offers
+     */
+    private static void saveSuffixIndex(Context context, Market market, OfferList offerList,
+                                        final SuffixIndex suffixIndex) {
+        // Only next to stored offers, the file would never be deleted otherwise
+        if (!OfferStore.exists(context, market)) {
+            return;
+        }
+
+        String filename = getSuffixFilename(market);
+        try {
+            IOUtils.saveInFile(context, filename, new IOUtils.StreamWriter() {
+                @Override
+                public void writeStream(OutputStream stream) throws IOException {
+                    SuffixIndexFile.write(stream, suffixIndex);
+                }
+            });
+            OfferCacheManager.getInstance(context).recordWrite(market.getMarketID(),
+                    offerList.getAvailableUntil());
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "IOException: " + e.getMessage());
+            context.deleteFile(filename);
+        }
+    }
+
+    /**
+     * Helper function for requestOffersFromServer, makes the actual request.
+     * Uses the validators of the last response and the local offers if nothing changed.
+     * @param context       current context
+     * @param market        market that is used
+     * @param localOffers   offers of the market that are already loaded or null
+     * @return              server response
+     */
+    private static OfferList fetchOffersFromServer(Context context, Market market,
+                                                   OfferList localOffers) throws IOException {
+        Log.v(LOG_TAG, "Request Offers from Server.");
+
+        // Compose URL with market ID
+        String url = URL_EDEKA_OFFERS + "marketId=" + market.getMarketID() + "&limit=89899";
+
+        // Validators of the last response, only useful if its offers are still stored
+        // (or still waiting to be written)
+        CacheValidators validators = new CacheValidators();
+        OfferWriteQueue.PendingWrite pendingWrite =
+                OfferWriteQueue.getInstance().getPending(market.getMarketID());
+        if (pendingWrite != null) {
+            validators = new CacheValidators(pendingWrite.validators.getETag(),
+                    pendingWrite.validators.getLastModified());
+        } else if (OfferStore.exists(context, market)) {
+            validators = restoreValidatorsFromFile(context, market);
+        }
+
+        // Request URL and parse the offers while they are received
+        OfferList offerList = IOUtils.requestFromServer(url, "GET", null, validators, OFFER_LIST_READER);
+
+        if (validators.isNotModified()) {
+            Log.v(LOG_TAG, "Offers not modified since last request.");
+            offerList = localOffers != null ? localOffers : restoreOffersFromFile(context, market);
+
+            // The stored offers are not readable anymore, request them again without validators
+            if (offerList == null) {
+                validators = new CacheValidators();
+                offerList = IOUtils.requestFromServer(url, "GET", null, validators, OFFER_LIST_READER);
+            } else {
+                return offerList;
+            }
+        }
+
+        if (offerList != null) {
+            // Written in the background, the offers can be used right away
+            OfferWriteQueue.getInstance().enqueue(context, market, offerList, validators);
+            Log.v(LOG_TAG, "Queued offers to be stored in file");
+        } else {
+            Log.v(LOG_TAG, "Nothing received.");
+        }
+        return offerList;
+    }
+
+    /**
+     * Read the offers token by token from a JSON stream into an offerList instance.
+     * The offers are added while the "docs" array is read, the whole JSON is never in memory.
+     * Every offer is copied into the arrays of the offerList right away.
+     * If the JSON can not be read to the end, no (partial) offerList is returned: the offers
+     * and the validators of the response must not be stored then.
+     * @param stream JSON stream (server response or file of the old format)
      * @return offerList instance
+     * @throws IOException if the stream ends early, does not contain the expected JSON or the
+     *                     period of validity is missing
      */
-    private static OfferList createOfferListFromJSONString(String jsonString) {
-        OfferList offerList = new OfferList();
+    static OfferList createOfferListFromStream(InputStream stream) throws IOException {
+        // Prices and strings of all offers in a few arrays, see ColumnarOfferList
+        ColumnarOfferList offerList = new ColumnarOfferList();
+
+        JsonReader reader = new JsonReader(new InputStreamReader(stream, UTF8));
+        // The files of the old format end the array with a comma
+        reader.setLenient(true);
 
         try {
-            JSONObject jsonObj = new JSONObject(jsonString);
-
-            // Get period of validity
-            offerList.setAvailableFrom(new Date(jsonObj.getLong("gueltig_von")));
-            offerList.setAvailableUntil(new Date(jsonObj.getLong("gueltig_bis")));
-
-            // Demand JSON Array with Offer-Objects
-            JSONArray docs = jsonObj.getJSONArray("docs");
-
-            // Run through docs-object, read offer data
-            for (int i = 0; i < docs.length(); i++) {
-                JSONObject offer = docs.getJSONObject(i);
-
-                String title = offer.getString("titel")
-                        .replace("\n", " ")
-                        .trim();
-                Double price = offer.getDouble("preis");
-                String description = Html.fromHtml(offer.getString("beschreibung"))
-                        .toString()
-                        .replace("\n", " ")
-                        .trim();
-                String imageUrl = offer.getString("bild_app");
-
-                // Create new offer instance and add it to the list
-                offerList.add(new Offer(title, price, description, imageUrl));
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+
+                switch (name) {
+                    // Get period of validity
+                    case "gueltig_von":
+                        offerList.setAvailableFrom(new Date(reader.nextLong()));
+                        break;
+                    case "gueltig_bis":
+                        offerList.setAvailableUntil(new Date(reader.nextLong()));
+                        break;
+                    // Run through docs-array, read offer data
+                    case "docs":
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            if (reader.peek() == JsonToken.NULL) {
+                                reader.nextNull();
+                            } else {
+                                offerList.add(readOffer(reader));
+                            }
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+
+            reader.endObject();
+
+            // Without the period of validity the offers can not be stored or refreshed
+            if (offerList.getAvailableFrom() == null || offerList.getAvailableUntil() == null) {
+                throw new IOException("Unexpected offer response: no period of validity");
             }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, "JSONException: " + e.getMessage());
+        } catch (IllegalStateException e) {
+            // Not the expected structure, the offers read so far are not complete
+            throw new IOException("Unexpected offer response: " + e.getMessage(), e);
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected offer response: " + e.getMessage(), e);
         }
 
+        offerList.trimToSize();
         Log.v(LOG_TAG, "Added: " + offerList.size() + " Elements.");
-        //Log.v(LOG_TAG, offerList.toString());
 
         return offerList;
     }
 
     /**
-     * Helper function for saveOffersListInFile.
-     * Convert offerList instance into a JSON string.
-     * Has to have the same format as the server response!
-     *
-     * @param offerList offerList to convert
-     * @return  JSON string
+     * Helper function for createOfferListFromStream.
+     * Read one offer object from the JSON stream.
+     * @param reader    reader positioned in front of the offer object
+     * @return          offer instance, without a price if the offer has none
      */
-    private static String createJSONStringFromOffersList (OfferList offerList) {
-        StringBuilder jsonString = new StringBuilder();
+    private static Offer readOffer(JsonReader reader) throws IOException {
+        String title = "";
+        Double price = null;
+        String description = "";
+        String imageUrl = "";
 
-        jsonString.append("{\"docs\":[");
+        reader.beginObject();
 
-        for (Offer o: offerList) {  // Escape possible quotes from title and description, it crashes
-            jsonString.append("{\"titel\":\"").append(o.getTitle().replace("\"", "\\\""))
-                    .append("\",\"preis\":").append(o.getPrice())
-                    .append(",\"beschreibung\":\"").append(o.getDescription().replace("\"", "\\\""))
-                    .append("\",\"bild_app\":\"").append(o.getImageUrl())
-                    .append("\"},");
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            // Missing values are kept empty
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+
+            switch (name) {
+                case "titel":
+                    title = HtmlText.toPlainText(reader.nextString());
+                    break;
+                case "preis":
+                    price = reader.nextDouble();
+                    break;
+                // Kept as markup, decoded when it is shown (see Offer)
+                case "beschreibung":
+                    description = reader.nextString().trim();
+                    break;
+                case "bild_app":
+                    imageUrl = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
         }
 
-        jsonString.append("]");
-        jsonString.append(", \"gueltig_von\":").append(offerList.getAvailableFromTime());
-        jsonString.append(", \"gueltig_bis\":").append(offerList.getAvailableUntilTime());
-        jsonString.append("}");
+        reader.endObject();
 
-        return jsonString.toString();
+        return new Offer(title, price, description, imageUrl);
     }
 
     /**
-     * Take an offerList instance and save it into a file.
-     * (Combine createJSONStringFromOffersList and saveStringInFile.)
+     * Save received offers and the validators of their response into the files of the market.
+     * (Called by the {@link OfferWriteQueue} on its background thread.)
      * @param context       current context
+     * @param market        market the offers belong to
      * @param offersList    offerList instance to be saved
-     * @param filename      file where to save the offers
+     * @param validators    validators of the response
      */
-    private static void saveOffersListInFile(Context context, OfferList offersList, String filename) {
-        String jsonString = createJSONStringFromOffersList(offersList);
-        IOUtils.saveStringInFile(context, jsonString, filename);
+    static void saveOffersInFiles(Context context, Market market, OfferList offersList,
+                                  CacheValidators validators) {
+        saveValidatorsInFile(context, validators, market);
+        saveOffersListInFile(context, offersList, market);
+        Log.v(LOG_TAG, "Stored offers in file");
     }
 
     /**
-     * Get the filename, where all offers of a market are saved.
+     * Take an offerList instance and save it into the offer files of the market.
+     * (Only the changes to the stored offers are written, see {@link OfferStore}.)
+     * @param context       current context
+     * @param offersList    offerList instance to be saved
+     * @param market        market the offers belong to
+     */
+    private static void saveOffersListInFile(Context context, OfferList offersList, Market market) {
+        try {
+            OfferDiff diff = OfferStore.save(context, market, offersList);
+            if (diff != null) {
+                Log.v(LOG_TAG, "Changed offers of market " + market.getMarketID() + ": " + diff);
+            }
+
+            // The sorted suffixes belong to the old offers
+            if (diff == null || !diff.isEmpty()) {
+                context.deleteFile(getSuffixFilename(market));
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "IOException: " + e.getMessage());
+            OfferStore.delete(context, market);
+            context.deleteFile(getSuffixFilename(market));
+        }
+
+        // The offers of the old format are replaced now
+        context.deleteFile(getLegacyOfferFilename(market));
+
+        // Make room for the offers, if necessary
+        OfferCacheManager cacheManager = OfferCacheManager.getInstance(context);
+        if (OfferStore.exists(context, market)) {
+            cacheManager.recordWrite(market.getMarketID(), offersList.getAvailableUntil());
+        } else {
+            cacheManager.recordDelete(market.getMarketID());
+        }
+    }
+
+    /**
+     * Read the offers from a file of the old JSON format and save them in the binary format.
+     * @param context   current context
+     * @param market    market of which the offers are restored
+     * @return          offerList instance, null if the old file is not readable
+     */
+    private static OfferList migrateLegacyOfferFile(Context context, Market market) {
+        Log.v(LOG_TAG, "Converting offer file of market " + market.getMarketID());
+
+        try {
+            OfferList offerList = IOUtils.restoreFromFile(context,
+                    getLegacyOfferFilename(market), OFFER_LIST_READER);
+            saveOffersListInFile(context, offerList, market);
+            return offerList;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "IOException: " + e.getMessage());
+            context.deleteFile(getLegacyOfferFilename(market));
+        }
+        return null;
+    }
+
+    /**
+     * Save the validators of the last offer response next to the offers of the market.
+     * (One line for the ETag, one for Last-Modified, empty if the server sent none.)
+     * @param context       current context
+     * @param validators    validators of the last response
+     * @param market        market the offers belong to
+     */
+    private static void saveValidatorsInFile(Context context, CacheValidators validators, Market market) {
+        String validatorString =
+                (validators.getETag() != null ? validators.getETag() : "") + "\n" +
+                (validators.getLastModified() != null ? validators.getLastModified() : "");
+        IOUtils.saveStringInFile(context, validatorString, getValidatorsFilename(market));
+    }
+
+    /**
+     * Read the validators of the last offer response of the market.
+     * @param context   current context
+     * @param market    market the offers belong to
+     * @return          validators, empty if there are none
+     */
+    private static CacheValidators restoreValidatorsFromFile(Context context, Market market) {
+        String filename = getValidatorsFilename(market);
+
+        if (!context.getFileStreamPath(filename).exists()) {
+            return new CacheValidators();
+        }
+
+        String[] lines = IOUtils.restoreStringFromFile(context, filename).split("\n");
+        String eTag = lines.length > 0 && !lines[0].isEmpty() ? lines[0] : null;
+        String lastModified = lines.length > 1 && !lines[1].isEmpty() ? lines[1] : null;
+
+        return new CacheValidators(eTag, lastModified);
+    }
+
+    /**
+     * Get the filename, where the offers of a market were saved in the old JSON format.
      * @param m     market which offers are searched
      * @return      filename
      */
-    private static String getOfferFilename (Market m) {
+    private static String getLegacyOfferFilename (Market m) {
         return m.getMarketID() + TEXTFILE_ENDING;
     }
 
+    /**
+     * Get the filename, where the sorted suffixes of the offers of a market are saved.
+     * @param m     market which offers are searched
+     * @return      filename
+     */
+    private static String getSuffixFilename (Market m) {
+        return m.getMarketID() + SUFFIX_FILE_ENDING;
+    }
+
+    /**
+     * Get the filename, where the validators of the last offer response of a market are saved.
+     * @param m     market which offers are searched
+     * @return      filename
+     */
+    private static String getValidatorsFilename (Market m) {
+        return m.getMarketID() + VALIDATORS_FILE_ENDING;
+    }
+
 }
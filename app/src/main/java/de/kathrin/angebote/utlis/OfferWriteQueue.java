@@ -0,0 +1,203 @@
+package de.kathrin.angebote.utlis;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import de.kathrin.angebote.models.Market;
+import de.kathrin.angebote.models.OfferList;
+
+import static de.kathrin.angebote.utlis.Strings.PROJECT_NAME;
+
+/**
+ * Writes received offers into the offer files of their market on a background thread, so a
+ * request does not have to wait for the file access. If new offers of a market are queued
+ * before the older ones are written, only the new ones are written.
+ * Until they are written, the queued offers are returned instead of the files' content.
+ */
+class OfferWriteQueue {
+
+    private static final String LOG_TAG = PROJECT_NAME + OfferWriteQueue.class.getSimpleName();
+
+    private static OfferWriteQueue instance = null;
+
+    /**
+     * Offers of a market that are not written yet, with the validators of their response.
+     */
+    static class PendingWrite {
+        final Context context;
+        final Market market;
+        final OfferList offerList;
+        final CacheValidators validators;
+
+        PendingWrite(Context context, Market market, OfferList offerList,
+                     CacheValidators validators) {
+            this.context = context;
+            this.market = market;
+            this.offerList = offerList;
+            this.validators = validators;
+        }
+    }
+
+    // One thread, so the files of a market are never written at the same time
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    // Newest offers of every market with a queued write, by market ID
+    private final Map<String, PendingWrite> pendingWrites = new HashMap<>();
+
+    private OfferWriteQueue() {}
+
+    /**
+     * @return the queue of the process
+     */
+    static synchronized OfferWriteQueue getInstance() {
+        if (instance == null) {
+            instance = new OfferWriteQueue();
+        }
+        return instance;
+    }
+
+    /**
+     * Queue the offers of a market to be written. Replaces offers of the market that are
+     * queued but not written yet.
+     * @param context       current context
+     * @param market        market the offers belong to
+     * @param offerList     offers to write
+     * @param validators    validators of the response the offers came with
+     */
+    synchronized void enqueue(Context context, Market market, OfferList offerList,
+                              CacheValidators validators) {
+        final String marketId = market.getMarketID();
+        boolean scheduled = pendingWrites.containsKey(marketId);
+
+        pendingWrites.put(marketId, new PendingWrite(context.getApplicationContext(), market,
+                offerList, validators));
+
+        if (!scheduled) {
+            schedule(marketId);
+        } else {
+            Log.v(LOG_TAG, "Replaced queued offers of market " + marketId);
+        }
+    }
+
+    /**
+     * Queue another write to the files of a market (e.g. the sorted suffixes of its offers).
+     * It runs on the same thread, after the offers queued before are written.
+     * @param write writes the file
+     */
+    void enqueueWrite(final Runnable write) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write.run();
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Writing failed: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * @param marketId  market of the offers
+     * @return          the queued offers of the market, null if there are none
+     */
+    synchronized PendingWrite getPending(String marketId) {
+        return pendingWrites.get(marketId);
+    }
+
+    /**
+     * @return  true if there are offers that are not written yet
+     */
+    synchronized boolean hasPending() {
+        return !pendingWrites.isEmpty();
+    }
+
+    /**
+     * Wait until all queued offers are written.
+     * @param timeoutMs maximum time to wait
+     * @return          true if everything is written
+     */
+    boolean flush(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+
+        while (true) {
+            synchronized (this) {
+                if (pendingWrites.isEmpty()) {
+                    return true;
+                }
+            }
+
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+
+            // The thread works in order: when this is done, everything queued before is done
+            Future<?> marker = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            try {
+                marker.get(remaining, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException | TimeoutException e) {
+                return false;
+            }
+        }
+    }
+
+
+    // PRIVATE HELPER FUNCTIONS
+
+    /**
+     * Helper function. Let the background thread write the newest offers of the market.
+     * @param marketId  market of the offers
+     */
+    private void schedule(final String marketId) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(marketId);
+            }
+        });
+    }
+
+    /**
+     * Helper function for schedule (on the background thread). Write the queued offers of a
+     * market. If newer ones were queued in the meantime, they are written next.
+     * @param marketId  market of the offers
+     */
+    private void write(String marketId) {
+        PendingWrite pendingWrite = getPending(marketId);
+        if (pendingWrite == null) {
+            return;
+        }
+
+        try {
+            OfferUtils.saveOffersInFiles(pendingWrite.context, pendingWrite.market,
+                    pendingWrite.offerList, pendingWrite.validators);
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Writing offers of market " + marketId + " failed: " + e.getMessage());
+        }
+
+        synchronized (this) {
+            if (pendingWrites.get(marketId) == pendingWrite) {
+                pendingWrites.remove(marketId);
+            } else {
+                schedule(marketId);
+            }
+        }
+    }
+}
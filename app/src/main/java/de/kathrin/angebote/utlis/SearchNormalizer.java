@@ -0,0 +1,66 @@
+package de.kathrin.angebote.utlis;
+
+import java.util.Locale;
+
+/**
+ * Brings texts into the form they are searched in: lower case (independent of the language of
+ * the device), runs of whitespace as one space and German umlauts and ß written out
+ * ("Müsli" becomes "muesli", like it is typed without umlauts).
+ */
+public class SearchNormalizer {
+
+    // Combining diaeresis, e.g. "u" followed by it is displayed as "ü"
+    private static final char COMBINING_DIAERESIS = '\u0308';
+
+    private SearchNormalizer() {}
+
+    /**
+     * @param text  text to normalize
+     * @return      normalized text, empty if the text is null
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+
+        String lowerCase = text.toLowerCase(Locale.GERMAN);
+        StringBuilder normalized = new StringBuilder(lowerCase.length() + 8);
+        boolean whitespace = false;
+
+        for (int i = 0; i < lowerCase.length(); i++) {
+            char c = lowerCase.charAt(i);
+
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                whitespace = true;
+                continue;
+            }
+            // Collapse whitespace, none at the start or the end
+            if (whitespace && normalized.length() > 0) {
+                normalized.append(' ');
+            }
+            whitespace = false;
+
+            switch (c) {
+                case 'ä':
+                    normalized.append("ae");
+                    break;
+                case 'ö':
+                    normalized.append("oe");
+                    break;
+                case 'ü':
+                    normalized.append("ue");
+                    break;
+                case 'ß':
+                    normalized.append("ss");
+                    break;
+                case COMBINING_DIAERESIS:
+                    normalized.append('e');
+                    break;
+                default:
+                    normalized.append(c);
+            }
+        }
+
+        return normalized.toString();
+    }
+}
@@ -0,0 +1,82 @@
+package de.kathrin.angebote.utlis;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import static de.kathrin.angebote.utlis.Strings.PROJECT_NAME;
+
+/**
+ * Runs at most one request per key at the same time. A caller asking for a key whose request
+ * is running does not start another one: it waits for the running request and gets the same
+ * result (or the same exception).
+ * The requests run on the executor, not on the callers' threads: interrupting a caller (e.g. a
+ * cancelled search) only ends its own wait, the others still get the result.
+ * @param <T>   result of a request
+ */
+class SingleFlight<T> {
+
+    private static final String LOG_TAG = PROJECT_NAME + SingleFlight.class.getSimpleName();
+
+    // Requests currently running, by key
+    private final ConcurrentHashMap<String, FutureTask<T>> runningRequests =
+            new ConcurrentHashMap<>();
+
+    private final Executor executor;
+
+    /**
+     * @param executor  runs the requests
+     */
+    SingleFlight(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Run the request, or wait for the running one of the key.
+     * @param key       key of the request (e.g. the market ID)
+     * @param request   request to run if none is running for the key
+     * @return          result of the request
+     * @throws IOException  if the request failed, or the caller was interrupted while waiting
+     *                      (InterruptedIOException)
+     */
+    T run(final String key, Callable<T> request) throws IOException {
+        FutureTask<T> task = new FutureTask<T>(request) {
+            @Override
+            protected void done() {
+                runningRequests.remove(key, this);
+            }
+        };
+
+        // Only start the request, if there is none running for the key
+        FutureTask<T> runningTask = runningRequests.putIfAbsent(key, task);
+
+        if (runningTask == null) {
+            executor.execute(task);
+            runningTask = task;
+        } else {
+            Log.v(LOG_TAG, "Waiting for the running request of " + key);
+        }
+
+        try {
+            return runningTask.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
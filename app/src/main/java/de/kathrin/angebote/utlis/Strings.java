@@ -10,6 +10,8 @@ public class Strings {
     public static final String NO_SERVER_CONNECTION =
             "Verbindung zum Server fehlgeschlagen. Es konnten keine Angebote geladen werden.";
     public static final String NO_OFFERS_FOUND = "Keine Angebote zu Ihrer Anfrage gefunden";
+    public static final String NO_FAVOURITE_MARKETS = "Sie haben noch keine Lieblingsmärkte.";
+    public static final String FAVOURITE_MARKETS_HEADER = "Alle Lieblingsmärkte";
 
     // Select Market Activity
     public static final String EXTRA_MARKET = PROJECT_NAME + "EXTRA_MARKET";
@@ -48,6 +50,12 @@ public class Strings {
 
     // File Access Strings
     static final String TEXTFILE_ENDING = ".txt";
+    static final String OFFER_FILE_ENDING = ".bin";
+    static final String DELTA_FILE_ENDING = ".delta";
+    static final String SUFFIX_FILE_ENDING = ".sfx";
+    static final String TEMPFILE_ENDING = ".tmp";
+    static final String VALIDATORS_FILE_ENDING = "_validators.txt";
+    static final String OFFER_CACHE_FILE = "offer_cache.txt";
     static final String DEFAULT_MARKET_FILE = "default_market.txt";
 
     // MarketUtils
@@ -0,0 +1,115 @@
+package de.kathrin.angebote.utlis;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import de.kathrin.angebote.models.Offer;
+import de.kathrin.angebote.models.SuffixIndex;
+
+/**
+ * File format of the sorted suffixes of a market's offers ({@link SuffixIndex}), stored next
+ * to the offer files so they are not sorted again every time the offers are restored.
+ *
+ *  Header:         magic number, version, hash of the indexed text, number of suffixes,
+ *                  bytes per suffix start
+ *  Suffixes:       start of every suffix in sorted order, with as few bytes as the length of
+ *                  the text needs (3 for the texts of a market, instead of 4 of an int)
+ *
+ * The hash tells if the suffixes still belong to the offers (the text is created from them).
+ */
+class SuffixIndexFile {
+
+    static final int MAGIC = 0x414E4753;   // "ANGS"
+    static final int VERSION = 2;
+
+    static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 1;
+
+    /**
+     * Write the sorted suffixes.
+     * @param out           stream to write to (not closed)
+     * @param suffixIndex   index of the offers
+     */
+    static void write(OutputStream out, SuffixIndex suffixIndex) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        int[] suffixes = suffixIndex.getSuffixes();
+        int width = getWidth(suffixes.length);
+
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeLong(suffixIndex.getTextHash());
+        data.writeInt(suffixes.length);
+        data.writeByte(width);
+        for (int suffix : suffixes) {
+            for (int shift = (width - 1) * 8; shift >= 0; shift -= 8) {
+                data.write(suffix >>> shift);
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Read the sorted suffixes of the offers. The file is mapped, only the suffixes are
+     * copied into the heap.
+     * @param file      file of the sorted suffixes
+     * @param offers    offers the suffixes were sorted for
+     * @return          the index, null if the offers changed since the file was written
+     */
+    static SuffixIndex read(File file, List<Offer> offers) throws IOException {
+        ByteBuffer buffer;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            // The mapping stays valid after the file is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC ||
+                buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a suffix index file");
+        }
+        long textHash = buffer.getLong(8);
+        int count = buffer.getInt(16);
+        int width = buffer.get(20);
+        if (count < 0 || width != getWidth(count) ||
+                buffer.capacity() != HEADER_SIZE + (long) width * count) {
+            throw new IOException("Suffix index file has the wrong size");
+        }
+
+        int[] suffixes = new int[count];
+        buffer.position(HEADER_SIZE);
+        for (int i = 0; i < count; i++) {
+            int suffix = 0;
+            for (int b = 0; b < width; b++) {
+                suffix = (suffix << 8) | (buffer.get() & 0xff);
+            }
+            suffixes[i] = suffix;
+        }
+
+        return SuffixIndex.restore(offers, textHash, suffixes);
+    }
+
+
+    // PRIVATE HELPER FUNCTIONS
+
+    /**
+     * Helper function. Number of bytes needed for every start of a suffix.
+     * @param count number of suffixes (the length of the text)
+     * @return      1 to 4 bytes, enough for the largest start (count - 1)
+     */
+    private static int getWidth(int count) {
+        int largest = Math.max(count - 1, 0);
+        int width = 1;
+        while (width < 4 && largest >>> (8 * width) != 0) {
+            width++;
+        }
+        return width;
+    }
+}
@@ -0,0 +1,42 @@
+package de.kathrin.angebote.utlis;
+
+import android.util.Log;
+
+import static de.kathrin.angebote.utlis.Strings.PROJECT_NAME;
+
+/**
+ * Records the bytes received on the wire and the decoded bytes of all server requests,
+ * to see how much the transfer compression saves.
+ */
+public class TransferStats {
+
+    private static final String LOG_TAG = PROJECT_NAME + TransferStats.class.getSimpleName();
+
+    private static long totalRequests = 0;
+    private static long totalWireBytes = 0;
+    private static long totalDecodedBytes = 0;
+
+    /**
+     * Record one request.
+     * @param requestUrl    URL of the request
+     * @param encoding      content encoding of the response (null if not compressed)
+     * @param wireBytes     bytes received on the wire
+     * @param decodedBytes  bytes after decompression
+     */
+    static synchronized void record(String requestUrl, String encoding, long wireBytes, long decodedBytes) {
+        totalRequests++;
+        totalWireBytes += wireBytes;
+        totalDecodedBytes += decodedBytes;
+
+        Log.v(LOG_TAG, "Received " + wireBytes + " bytes (" + encoding + "), decoded " +
+                decodedBytes + " bytes from " + requestUrl);
+    }
+
+    /**
+     * Log the sum of all requests since the start of the process.
+     */
+    public static synchronized void logSummary() {
+        Log.v(LOG_TAG, totalRequests + " requests: received " + totalWireBytes +
+                " bytes, decoded " + totalDecodedBytes + " bytes.");
+    }
+}
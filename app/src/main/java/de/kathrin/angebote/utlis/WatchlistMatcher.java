@@ -0,0 +1,296 @@
+package de.kathrin.angebote.utlis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeSet;
+
+import de.kathrin.angebote.models.Offer;
+import de.kathrin.angebote.models.OfferIndex;
+
+/**
+ * Finds the offers matching any product of the watchlist (Aho-Corasick automaton).
+ * The words of all products are compiled into one automaton, which reads the normalized title
+ * and description of every offer exactly once and finds all product words in them.
+ * Like the offer search, a product matches if each of its words is contained in the offer
+ * (also inside of compound words, "joghurt" matches "Fruchtjoghurt").
+ *
+ * The matcher can be used by several threads at the same time.
+ */
+public class WatchlistMatcher {
+
+    private static final int ROOT = 0;
+
+    private final List<String> products;
+
+    // Product words and for every word the products containing it
+    private final int wordCount;
+    private final int[][] productsOfWord;
+    private final int[] wordsOfProduct;
+
+    // Characters of the automaton (sorted), and a fast lookup for ASCII
+    private final char[] alphabet;
+    private final int[] asciiIndex = new int[128];
+
+    // Automaton: next state for every state and character, and words ending in a state
+    // (including the ones of shorter suffixes)
+    private final int[][] transitions;
+    private final int[][] outputs;
+
+    /**
+     * Compile the automaton for the products.
+     * @param products  products of the watchlist
+     */
+    public WatchlistMatcher(List<String> products) {
+        this.products = new ArrayList<>(products);
+
+        // Collect the distinct words of all products
+        Map<String, Integer> wordIds = new HashMap<>();
+        List<List<Integer>> productsOfWordList = new ArrayList<>();
+        wordsOfProduct = new int[products.size()];
+
+        for (int p = 0; p < products.size(); p++) {
+            List<String> words = OfferIndex.splitWords(SearchNormalizer.normalize(products.get(p)));
+            for (String word : new TreeSet<>(words)) {
+                Integer id = wordIds.get(word);
+                if (id == null) {
+                    id = wordIds.size();
+                    wordIds.put(word, id);
+                    productsOfWordList.add(new ArrayList<Integer>());
+                }
+                productsOfWordList.get(id).add(p);
+                wordsOfProduct[p]++;
+            }
+        }
+
+        wordCount = wordIds.size();
+        productsOfWord = new int[wordCount][];
+        for (int w = 0; w < wordCount; w++) {
+            productsOfWord[w] = toArray(productsOfWordList.get(w));
+        }
+
+        // Alphabet of all product words
+        TreeSet<Character> characters = new TreeSet<>();
+        for (String word : wordIds.keySet()) {
+            for (int i = 0; i < word.length(); i++) {
+                characters.add(word.charAt(i));
+            }
+        }
+        alphabet = new char[characters.size()];
+        int a = 0;
+        for (char c : characters) {
+            alphabet[a++] = c;
+        }
+        Arrays.fill(asciiIndex, -1);
+        for (int i = 0; i < alphabet.length && alphabet[i] < 128; i++) {
+            asciiIndex[alphabet[i]] = i;
+        }
+
+        // Trie of the words (state 0 is the root)
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> endingWord = new ArrayList<>();
+        trie.add(newState());
+        endingWord.add(-1);
+
+        for (Map.Entry<String, Integer> e : wordIds.entrySet()) {
+            String word = e.getKey();
+            int state = ROOT;
+            for (int i = 0; i < word.length(); i++) {
+                int c = indexOf(word.charAt(i));
+                if (trie.get(state)[c] < 0) {
+                    trie.get(state)[c] = trie.size();
+                    trie.add(newState());
+                    endingWord.add(-1);
+                }
+                state = trie.get(state)[c];
+            }
+            endingWord.set(state, e.getValue());
+        }
+
+        int stateCount = trie.size();
+        transitions = trie.toArray(new int[stateCount][]);
+        outputs = new int[stateCount][];
+
+        // Failure links breadth first, missing transitions follow them (complete automaton)
+        int[] failure = new int[stateCount];
+        Queue<Integer> queue = new LinkedList<>();
+        for (int c = 0; c < alphabet.length; c++) {
+            int next = transitions[ROOT][c];
+            if (next < 0) {
+                transitions[ROOT][c] = ROOT;
+            } else {
+                failure[next] = ROOT;
+                queue.add(next);
+            }
+        }
+        outputs[ROOT] = new int[0];
+
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+
+            // Words ending here and the ones ending in the failure state
+            int[] inherited = outputs[failure[state]];
+            if (endingWord.get(state) >= 0) {
+                int word = endingWord.get(state);
+                outputs[state] = Arrays.copyOf(inherited, inherited.length + 1);
+                outputs[state][inherited.length] = word;
+            } else {
+                outputs[state] = inherited;
+            }
+
+            for (int c = 0; c < alphabet.length; c++) {
+                int next = transitions[state][c];
+                if (next < 0) {
+                    transitions[state][c] = transitions[failure[state]][c];
+                } else {
+                    failure[next] = transitions[failure[state]][c];
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find all offers matching at least one product.
+     * @param offers    offers of a market
+     * @return          matching offers, in the order of the offers
+     */
+    public List<Offer> findOffers(List<Offer> offers) {
+        List<Offer> resultList = new ArrayList<>();
+        Scan scan = new Scan();
+
+        for (Offer o : offers) {
+            if (scan.matches(o, null)) {
+                resultList.add(o);
+            }
+        }
+        return resultList;
+    }
+
+    /**
+     * Find all products matching the offer.
+     * @param offer offer to check
+     * @return      matching products, in the order of the watchlist
+     */
+    public List<String> findProducts(Offer offer) {
+        List<Integer> productIds = new ArrayList<>();
+        new Scan().matches(offer, productIds);
+
+        List<String> resultList = new ArrayList<>(productIds.size());
+        for (int p : productIds) {
+            resultList.add(products.get(p));
+        }
+        return resultList;
+    }
+
+
+    // PRIVATE HELPER FUNCTIONS
+
+    /**
+     * State of the scan of one thread. Which words and products were found is marked with
+     * the number of the offer, so nothing has to be reset between two offers.
+     */
+    private class Scan {
+        private final int[] wordFound = new int[wordCount];
+        private final int[] productFound = new int[products.size()];
+        private final int[] productWordsFound = new int[products.size()];
+        private int offerNumber = 0;
+
+        /**
+         * Read title and description of the offer once and check the products.
+         * @param offer         offer to check
+         * @param productIds    receives all matching products, or null to stop at the first
+         * @return              true if a product matches
+         */
+        boolean matches(Offer offer, List<Integer> productIds) {
+            offerNumber++;
+            boolean found = scan(offer.getTitleKey(), productIds);
+            if (!found || productIds != null) {
+                found |= scan(offer.getDescriptionKey(), productIds);
+            }
+            if (productIds != null) {
+                Collections.sort(productIds);
+            }
+            return found;
+        }
+
+        /**
+         * Helper function for matches. Run the automaton over a text.
+         * @param text          normalized text
+         * @param productIds    receives matching products or null
+         * @return              true if a product matches
+         */
+        private boolean scan(String text, List<Integer> productIds) {
+            boolean found = false;
+            int state = ROOT;
+
+            for (int i = 0; i < text.length(); i++) {
+                int c = indexOf(text.charAt(i));
+                state = c < 0 ? ROOT : transitions[state][c];
+
+                for (int word : outputs[state]) {
+                    if (wordFound[word] == offerNumber) {
+                        continue;
+                    }
+                    wordFound[word] = offerNumber;
+
+                    for (int p : productsOfWord[word]) {
+                        if (productFound[p] != offerNumber) {
+                            productFound[p] = offerNumber;
+                            productWordsFound[p] = 0;
+                        }
+                        if (++productWordsFound[p] == wordsOfProduct[p]) {
+                            if (productIds == null) {
+                                return true;
+                            }
+                            productIds.add(p);
+                            found = true;
+                        }
+                    }
+                }
+            }
+            return found;
+        }
+    }
+
+    /**
+     * Helper function. Position of the character in the alphabet.
+     * @param c character
+     * @return  position, -1 if no product word contains it
+     */
+    private int indexOf(char c) {
+        if (c < 128) {
+            return asciiIndex[c];
+        }
+        int index = Arrays.binarySearch(alphabet, c);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * Helper function for the constructor. A trie state without transitions.
+     * @return  transitions of the state
+     */
+    private int[] newState() {
+        int[] state = new int[alphabet.length];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    /**
+     * Helper function for the constructor.
+     * @param list  numbers
+     * @return      the numbers as array
+     */
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,96 @@
+package de.kathrin.angebote.models;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark (run by hand, not part of the unit tests): heap kept by the offers of three
+ * markets with mostly the same offers, in OfferLists and in ColumnarOfferLists, and the time
+ * to read the normalized texts of all offers by position compared with through a view.
+ */
+public class ColumnarOfferListBenchmark {
+
+    private static final int[] OFFER_COUNTS = {1000, 10000, 50000};
+    private static final int MARKETS = 3;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        for (int count : OFFER_COUNTS) {
+            OfferList[] offerLists = new OfferList[MARKETS];
+            long start = getUsedMemory();
+            for (int m = 0; m < MARKETS; m++) {
+                offerLists[m] = new OfferList();
+                offerLists[m].addAll(createMarketOffers(count, m));
+                // Computed by the first search
+                for (int i = 0; i < count; i++) {
+                    offerLists[m].getTitleKey(i);
+                    offerLists[m].getDescriptionKey(i);
+                }
+            }
+            long offerListBytes = getUsedMemory() - start;
+
+            ColumnarOfferList[] columnarLists = new ColumnarOfferList[MARKETS];
+            start = getUsedMemory();
+            for (int m = 0; m < MARKETS; m++) {
+                columnarLists[m] = new ColumnarOfferList();
+                columnarLists[m].addAll(createMarketOffers(count, m));
+                columnarLists[m].trimToSize();
+            }
+            long columnarBytes = getUsedMemory() - start;
+
+            long byPositionTime = Long.MAX_VALUE;
+            long byViewTime = Long.MAX_VALUE;
+            int length = 0;
+            ColumnarOfferList offerList = columnarLists[0];
+            for (int round = 0; round < ROUNDS; round++) {
+                start = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    length += offerList.getTitleKey(i).length() +
+                            offerList.getDescriptionKey(i).length();
+                }
+                byPositionTime = Math.min(byPositionTime, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    Offer offer = offerList.get(i);
+                    length += offer.getTitleKey().length() + offer.getDescriptionKey().length();
+                }
+                byViewTime = Math.min(byViewTime, System.nanoTime() - start);
+            }
+
+            System.out.printf("%d offers x %d markets: OfferList %d KB, columnar %d KB " +
+                            "| keys by position %.2f ms, by view %.2f ms (%d)%n",
+                    count, MARKETS, offerListBytes / 1024, columnarBytes / 1024,
+                    byPositionTime / 1e6, byViewTime / 1e6, length);
+
+            // Keep the lists until they are measured
+            offerLists[0].size();
+            columnarLists[0].size();
+        }
+    }
+
+
+    // HELPER FUNCTIONS
+
+    /**
+     * Offers of one market: the same as the other markets' (but other objects, as when they
+     * are received), except for every tenth one.
+     */
+    private static List<Offer> createMarketOffers(int count, int market) {
+        List<Offer> offers = OfferIndexBenchmark.createOffers(new Random(count), count);
+        List<Offer> own = OfferIndexBenchmark.createOffers(new Random(count * 31 + market + 1),
+                count);
+        for (int i = 0; i < count; i += 10) {
+            offers.set(i, own.get(i));
+        }
+        return offers;
+    }
+
+    private static long getUsedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,80 @@
+package de.kathrin.angebote.models;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The columnar list returns the same values as the offers that were added.
+ */
+public class ColumnarOfferListTest {
+
+    @Test
+    public void returnsAddedValues() {
+        List<Offer> offers = SuffixIndexTest.createOffers(new Random(22), 1000);
+        offers.add(new Offer("Ohne Preis", null, "", ""));
+        offers.add(new Offer("Crème brûlée – 2 × 100 g", 1.99, "Œufs &amp; ☕", "https://x/ä.jpg"));
+
+        ColumnarOfferList offerList = new ColumnarOfferList();
+        offerList.addAll(offers);
+        offerList.trimToSize();
+
+        assertEquals(offers.size(), offerList.size());
+        for (int i = 0; i < offers.size(); i++) {
+            assertSameValues(offers.get(i), offerList.get(i));
+            Double price = offers.get(i).getPrice();
+            assertEquals(price != null ? (int) Math.round(price * 100) : OfferPool.NO_PRICE,
+                    offerList.getPriceCents(i));
+        }
+    }
+
+    @Test
+    public void readsKeysByPosition() {
+        List<Offer> offers = SuffixIndexTest.createOffers(new Random(23), 100);
+        ColumnarOfferList offerList = new ColumnarOfferList();
+        offerList.addAll(offers);
+
+        for (int i = 0; i < offers.size(); i++) {
+            assertEquals(offers.get(i).getTitleKey(), offerList.getTitleKey(i));
+            assertEquals(offers.get(i).getDescriptionKey(), offerList.getDescriptionKey(i));
+        }
+        assertArrayEquals(new SuffixIndex(offers).getSuffixes(),
+                new SuffixIndex(offerList).getSuffixes());
+    }
+
+    @Test
+    public void addsAfterTrimming() {
+        ColumnarOfferList offerList = new ColumnarOfferList();
+        offerList.trimToSize();
+
+        Offer offer = new Offer("Joghurt", 0.49, "150 g", "");
+        offerList.add(offer);
+        offerList.trimToSize();
+        offerList.add(offer);
+
+        assertEquals(2, offerList.size());
+        assertSameValues(offer, offerList.get(1));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void addsOnlyAtTheEnd() {
+        ColumnarOfferList offerList = new ColumnarOfferList();
+        offerList.add(new Offer("Joghurt", 0.49, "150 g", ""));
+        offerList.add(0, new Offer("Käse", 1.49, "200 g", ""));
+    }
+
+
+    // HELPER FUNCTIONS
+
+    static void assertSameValues(Offer expected, Offer actual) {
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getPrice(), actual.getPrice());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getImageUrl(), actual.getImageUrl());
+        assertEquals(expected.getTitleKey(), actual.getTitleKey());
+        assertEquals(expected.getDescriptionKey(), actual.getDescriptionKey());
+    }
+}
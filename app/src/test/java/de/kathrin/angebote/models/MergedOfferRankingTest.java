@@ -0,0 +1,176 @@
+package de.kathrin.angebote.models;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The merged pages of several markets are the same as sorting the matching offers of all
+ * markets at once, also when a market is added later.
+ */
+public class MergedOfferRankingTest {
+
+    @Test
+    public void returnsSameOrderAsFullSort() {
+        Random random = new Random(21);
+
+        for (int round = 0; round < 50; round++) {
+            List<List<Offer>> offers = createMarkets(random);
+            List<String> searchWords = createSearchWords(random, offers.get(0));
+            List<int[]> positions = new ArrayList<>();
+            for (List<Offer> marketOffers : offers) {
+                positions.add(OfferRankingTest.createPositions(random, marketOffers.size()));
+            }
+
+            MergedOfferRanking merged = new MergedOfferRanking(random.nextInt(20) + 1);
+            for (int m = 0; m < offers.size(); m++) {
+                merged.add(createMarket(m), new OfferRanking(offers.get(m), positions.get(m),
+                        searchWords));
+            }
+
+            assertEquals(sort(offers, positions, searchWords), getTitles(nextAll(random, merged)));
+        }
+    }
+
+    @Test
+    public void mergesMarketsAddedLater() {
+        Random random = new Random(22);
+
+        for (int round = 0; round < 50; round++) {
+            List<List<Offer>> offers = createMarkets(random);
+            List<String> searchWords = createSearchWords(random, offers.get(0));
+            List<int[]> positions = new ArrayList<>();
+
+            MergedOfferRanking merged = new MergedOfferRanking(random.nextInt(20) + 1);
+            for (int m = 0; m < offers.size(); m++) {
+                positions.add(OfferRankingTest.createPositions(random, offers.get(m).size()));
+                merged.add(createMarket(m), new OfferRanking(offers.get(m), positions.get(m),
+                        searchWords));
+
+                // Some offers are shown before the next market is done
+                merged.next(random.nextInt(50));
+                merged.restart();
+            }
+
+            assertEquals(sort(offers, positions, searchWords), getTitles(nextAll(random, merged)));
+        }
+    }
+
+    @Test
+    public void marksOffersWithTheirMarket() {
+        List<Offer> offers = SuffixIndexTest.createOffers(new Random(23), 10);
+        Market market = createMarket(0);
+        MergedOfferRanking merged = new MergedOfferRanking(3);
+        merged.add(market, new OfferRanking(offers, new int[] {1, 2}, new ArrayList<String>()));
+
+        List<Offer> result = merged.next(10);
+        assertEquals(2, result.size());
+        assertSame(market, ((MarketOffer) result.get(0)).getMarket());
+        assertEquals(offers.get(1).getTitle(), result.get(0).getTitle());
+        assertFalse(merged.hasNext());
+    }
+
+
+    // HELPER FUNCTIONS
+
+    /**
+     * Offer of the oracle: its market and position.
+     */
+    private static class Match {
+        final int market;
+        final int position;
+        final int points;
+        final Offer offer;
+
+        Match(int market, int position, int points, Offer offer) {
+            this.market = market;
+            this.position = position;
+            this.points = points;
+            this.offer = offer;
+        }
+    }
+
+    private static List<List<Offer>> createMarkets(Random random) {
+        List<List<Offer>> offers = new ArrayList<>();
+        for (int m = random.nextInt(4) + 1; m > 0; m--) {
+            offers.add(SuffixIndexTest.createOffers(random, random.nextInt(200) + 1));
+        }
+        return offers;
+    }
+
+    private static List<String> createSearchWords(Random random, List<Offer> offers) {
+        List<String> searchWords = new ArrayList<>();
+        // None sometimes, then every market keeps its order
+        for (int w = random.nextInt(3); w > 0; w--) {
+            searchWords.add(SuffixIndexTest.createSearchWords(random, offers, 1).get(0));
+        }
+        return searchWords;
+    }
+
+    private static Market createMarket(int number) {
+        return new Market(String.valueOf(number), "Markt " + number, "", "", "");
+    }
+
+    private static List<Offer> nextAll(Random random, MergedOfferRanking merged) {
+        List<Offer> result = new ArrayList<>();
+        while (merged.hasNext()) {
+            result.addAll(merged.next(random.nextInt(40) + 1));
+        }
+        return result;
+    }
+
+    private static List<String> getTitles(List<Offer> offers) {
+        List<String> titles = new ArrayList<>();
+        for (Offer o : offers) {
+            titles.add(((MarketOffer) o).getMarket().getMarketID() + " " + o.getTitle());
+        }
+        return titles;
+    }
+
+    /**
+     * Oracle: sort the matching offers of all markets by points, title length and position,
+     * then by market. Without search words every market keeps its order, the markets take
+     * turns.
+     */
+    private static List<String> sort(List<List<Offer>> offers, List<int[]> positions,
+                                     final List<String> searchWords) {
+        List<Match> matches = new ArrayList<>();
+        for (int m = 0; m < offers.size(); m++) {
+            int[] marketPositions = positions.get(m);
+            for (int i = 0; i < marketPositions.length; i++) {
+                Offer o = offers.get(m).get(marketPositions[i]);
+                matches.add(new Match(m, searchWords.isEmpty() ? i : marketPositions[i],
+                        OfferRankingTest.getPoints(o, searchWords), o));
+            }
+        }
+
+        Collections.sort(matches, new Comparator<Match>() {
+            @Override
+            public int compare(Match a, Match b) {
+                if (a.points != b.points) {
+                    return b.points - a.points;
+                }
+                if (!searchWords.isEmpty()) {
+                    int titleLength = a.offer.getTitleKey().length() -
+                            b.offer.getTitleKey().length();
+                    if (titleLength != 0) {
+                        return titleLength;
+                    }
+                }
+                return a.position != b.position ? a.position - b.position : a.market - b.market;
+            }
+        });
+
+        List<String> titles = new ArrayList<>();
+        for (Match match : matches) {
+            titles.add(match.market + " " + match.offer.getTitle());
+        }
+        return titles;
+    }
+}
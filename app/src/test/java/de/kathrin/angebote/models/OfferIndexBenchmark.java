@@ -0,0 +1,121 @@
+package de.kathrin.angebote.models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.kathrin.angebote.utlis.SearchNormalizer;
+
+/**
+ * Benchmark (run by hand, not part of the unit tests): search time of the index on 10k offers,
+ * compared with checking every offer with contains. The first search builds the index, its
+ * time is shown separately.
+ */
+public class OfferIndexBenchmark {
+
+    private static final int OFFER_COUNT = 10000;
+    private static final int SEARCH_ITEMS = 1000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        Random random = new Random(14);
+        OfferList offerList = new OfferList();
+        offerList.addAll(createOffers(random, OFFER_COUNT));
+        List<String> searchItems = createSearchItems(random, offerList);
+
+        // Normalized keys are computed when the offers are created, not by the search
+        long start = System.nanoTime();
+        OfferIndex index = offerList.getIndex();
+        index.search(searchItems.get(0), null);
+        long buildTime = System.nanoTime() - start;
+
+        long indexTime = Long.MAX_VALUE;
+        long containsTime = Long.MAX_VALUE;
+        long found = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            start = System.nanoTime();
+            for (String searchItem : searchItems) {
+                found += index.search(searchItem, null).size();
+            }
+            indexTime = Math.min(indexTime, (System.nanoTime() - start) / searchItems.size());
+
+            start = System.nanoTime();
+            for (String searchItem : searchItems) {
+                found += searchWithContains(offerList, searchItem);
+            }
+            containsTime = Math.min(containsTime, (System.nanoTime() - start) / searchItems.size());
+        }
+
+        System.out.printf("%d offers: index built in %.1f ms, search %.3f ms | contains %.3f ms " +
+                        "(%d offers found on average)%n",
+                OFFER_COUNT, buildTime / 1e6, indexTime / 1e6, containsTime / 1e6,
+                found / (2L * ROUNDS * searchItems.size()));
+    }
+
+
+    // HELPER FUNCTIONS
+
+    // Syllables of the words, thousands of different words like in a real feed
+    private static final String[] SYLLABLES = {"jo", "ghurt", "erd", "beer", "voll", "milch",
+            "ka", "se", "gou", "da", "häh", "chen", "schen", "kel", "mü", "sli", "ap", "fel",
+            "bio", "reis", "frucht", "scho", "ko", "la", "de", "wurst", "brot", "but", "ter",
+            "sah", "ne", "quark", "tee", "kaf", "fee", "saft", "nu", "deln", "to", "ma"};
+
+    /**
+     * Offers with titles of 3 and descriptions of 20 words, each of 2 to 4 syllables.
+     */
+    static List<Offer> createOffers(Random random, int count) {
+        List<Offer> offers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            offers.add(new Offer(createText(random, 3), (random.nextInt(2000) + 1) / 100.0,
+                    createText(random, 20), ""));
+        }
+        return offers;
+    }
+
+    private static String createText(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            int syllables = 2 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++) {
+                text.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            text.append(' ');
+        }
+        return text.toString().trim();
+    }
+
+    /**
+     * Parts of words of the offers with at least three characters, like typed search items
+     * (one or two characters match nearly every offer).
+     */
+    private static List<String> createSearchItems(Random random, List<Offer> offers) {
+        List<String> searchItems = new ArrayList<>();
+        for (String word : SuffixIndexTest.createSearchWords(random, offers, SEARCH_ITEMS * 4)) {
+            if (word.length() >= 3 && searchItems.size() < SEARCH_ITEMS) {
+                searchItems.add(word);
+            }
+        }
+        return searchItems;
+    }
+
+    /**
+     * The search without index: every offer is checked for every word of the search item.
+     * @return  number of matching offers
+     */
+    private static int searchWithContains(List<Offer> offers, String searchItem) {
+        List<String> searchWords = OfferIndex.splitWords(SearchNormalizer.normalize(searchItem));
+        int count = 0;
+        for (Offer o : offers) {
+            boolean allFound = true;
+            for (int i = 0; i < searchWords.size() && allFound; i++) {
+                allFound = o.getTitleKey().contains(searchWords.get(i)) ||
+                        o.getDescriptionKey().contains(searchWords.get(i));
+            }
+            if (allFound) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
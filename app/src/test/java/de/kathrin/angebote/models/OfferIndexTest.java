@@ -0,0 +1,103 @@
+package de.kathrin.angebote.models;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import de.kathrin.angebote.utlis.SearchNormalizer;
+
+import static org.junit.Assert.*;
+
+/**
+ * The index finds the same offers as checking every word of the search item with contains,
+ * also when a previous result is narrowed.
+ */
+public class OfferIndexTest {
+
+    @Test
+    public void findsSameOffersAsContains() {
+        Random random = new Random(22);
+        OfferList offers = createOfferList(random, 400);
+        List<String> words = SuffixIndexTest.createSearchWords(random, offers, 300);
+
+        for (int round = 0; round < 300; round++) {
+            String searchItem = words.get(random.nextInt(words.size()));
+            if (random.nextBoolean()) {
+                searchItem += " " + words.get(random.nextInt(words.size()));
+            }
+            assertEquals(searchItem, search(offers, searchItem),
+                    offers.getIndex().search(searchItem));
+        }
+    }
+
+    @Test
+    public void narrowsPreviousResult() {
+        Random random = new Random(23);
+        OfferList offers = createOfferList(random, 400);
+        OfferIndex index = offers.getIndex();
+
+        // Type search items character by character, every result narrows the previous one
+        for (String searchItem : new String[] {"Joghurt Erdbeer", "milch bio", "Kase Gouda",
+                "hahnchenschenkel", "500 g"}) {
+            OfferIndex.Result result = null;
+            for (int length = 1; length <= searchItem.length(); length++) {
+                String typed = searchItem.substring(0, length);
+                result = index.search(typed, result);
+                assertEquals(typed, search(offers, typed), result.getOffers());
+            }
+        }
+    }
+
+    @Test
+    public void findsSimilarWords() {
+        OfferList offers = createOfferList(new Random(24), 200);
+        OfferIndex index = offers.getIndex();
+
+        // Only "joghurt" starts similar to the search word, not "fruchtjoghurt"
+        Set<Offer> expected = new HashSet<>();
+        for (Offer o : offers) {
+            for (String word : OfferIndex.splitWords(o.getTitleKey() + " " +
+                    o.getDescriptionKey())) {
+                if (word.startsWith("joghurt")) {
+                    expected.add(o);
+                }
+            }
+        }
+
+        OfferIndex.Result similar = index.searchSimilar("joghrt");
+        assertTrue(similar.isSimilar());
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, new HashSet<>(similar.getOffers()));
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private static OfferList createOfferList(Random random, int count) {
+        OfferList offerList = new OfferList();
+        offerList.addAll(SuffixIndexTest.createOffers(random, count));
+        return offerList;
+    }
+
+    /**
+     * Oracle: every word of the search item is contained in the title or the description.
+     */
+    private static List<Offer> search(List<Offer> offers, String searchItem) {
+        List<String> searchWords = OfferIndex.splitWords(SearchNormalizer.normalize(searchItem));
+        List<Offer> resultList = new ArrayList<>();
+        for (Offer o : offers) {
+            boolean allFound = true;
+            for (String word : searchWords) {
+                allFound &= o.getTitleKey().contains(word) || o.getDescriptionKey().contains(word);
+            }
+            if (allFound) {
+                resultList.add(o);
+            }
+        }
+        return resultList;
+    }
+}
@@ -0,0 +1,130 @@
+package de.kathrin.angebote.models;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Offers with the same values share a slot, slots are read while offers are added, and the
+ * slots of lists that are not used anymore are released.
+ */
+public class OfferPoolTest {
+
+    @Test
+    public void sharesSlotsOfSameOffers() {
+        OfferPool.Segment segment = new OfferPool.Segment();
+        OfferPool.ListSlots a = segment.addList(new ColumnarOfferList());
+        OfferPool.ListSlots b = segment.addList(new ColumnarOfferList());
+
+        List<Offer> offers = SuffixIndexTest.createOffers(new Random(23), 300);
+        for (Offer o : offers) {
+            segment.add(a, o);
+        }
+        for (Offer o : offers) {
+            // Same values, different objects
+            segment.add(b, new Offer(o.getTitle(), o.getPrice(), o.getDescription(),
+                    o.getImageUrl()));
+        }
+        segment.add(b, new Offer(offers.get(0).getTitle(), null,
+                offers.get(0).getDescription(), offers.get(0).getImageUrl()));
+        segment.add(b, new Offer(offers.get(0).getTitle(), offers.get(0).getPrice() + 0.01,
+                offers.get(0).getDescription(), offers.get(0).getImageUrl()));
+
+        for (int i = 0; i < offers.size(); i++) {
+            assertEquals(a.slots[i], b.slots[i]);
+        }
+        assertNotEquals(a.slots[0], b.slots[offers.size()]);
+        assertNotEquals(a.slots[0], b.slots[offers.size() + 1]);
+        assertEquals(OfferPool.NO_PRICE, segment.getPriceCents(b.slots[offers.size()]));
+        assertEquals(segment.getSlotCount(), segment.getUsedSlotCount());
+    }
+
+    @Test
+    public void readsWhileOffersAreAdded() throws InterruptedException {
+        final OfferPool.Segment segment = new OfferPool.Segment();
+        final OfferPool.ListSlots list = segment.addList(new ColumnarOfferList());
+        // Long texts, so new byte buffers are started often
+        final List<Offer> offers = SuffixIndexTest.createOffers(new Random(24), 20000);
+        final int[] slots = new int[offers.size()];
+        final AtomicInteger added = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread[] readers = new Thread[3];
+        for (int r = 0; r < readers.length; r++) {
+            final Random random = new Random(r);
+            readers[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (added.get() < offers.size()) {
+                            int count = added.get();
+                            if (count == 0) {
+                                continue;
+                            }
+                            int i = random.nextInt(count);
+                            assertEquals(offers.get(i).getTitleKey(),
+                                    segment.getValue(slots[i], OfferPool.TITLE_KEY));
+                            assertEquals(offers.get(i).getDescription(),
+                                    segment.getValue(slots[i], OfferPool.DESCRIPTION));
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            });
+            readers[r].start();
+        }
+
+        for (int i = 0; i < offers.size(); i++) {
+            slots[i] = segment.add(list, offers.get(i));
+            // Hands the slot over to the readers
+            added.incrementAndGet();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    @Test
+    public void releasesSlotsOfListsNotUsedAnymore() throws InterruptedException {
+        OfferPool.Segment segment = new OfferPool.Segment();
+        List<Offer> offers = SuffixIndexTest.createOffers(new Random(25), 200);
+
+        ColumnarOfferList kept = new ColumnarOfferList();
+        OfferPool.ListSlots keptSlots = segment.addList(kept);
+        for (Offer o : offers.subList(0, 100)) {
+            segment.add(keptSlots, o);
+        }
+        addDroppedList(segment, offers);
+        assertEquals(200, segment.getSlotCount());
+
+        // Only the offers of the list that is still used remain
+        for (int i = 0; i < 100 && segment.getUsedSlotCount() != 100; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(100, segment.getUsedSlotCount());
+        assertEquals(100, keptSlots.size);
+        assertNotNull(kept);
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private static void addDroppedList(OfferPool.Segment segment, List<Offer> offers) {
+        OfferPool.ListSlots dropped = segment.addList(new ColumnarOfferList());
+        for (Offer o : offers) {
+            segment.add(dropped, o);
+        }
+        assertEquals(200, segment.getUsedSlotCount());
+    }
+}
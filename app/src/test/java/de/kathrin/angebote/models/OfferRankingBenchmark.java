@@ -0,0 +1,63 @@
+package de.kathrin.angebote.models;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark (run by hand, not part of the unit tests): time to rate the matching offers, to
+ * select the first page and the following ones, compared with sorting all of them at once,
+ * for 1k to 50k matching offers.
+ */
+public class OfferRankingBenchmark {
+
+    private static final int[] OFFER_COUNTS = {1000, 10000, 50000};
+    private static final int PAGE_SIZE = 30;
+    private static final int PAGES = 10;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        List<String> searchWords = Arrays.asList("milch", "jo");
+
+        for (int count : OFFER_COUNTS) {
+            List<Offer> offers = OfferIndexBenchmark.createOffers(new Random(count), count);
+            int[] positions = new int[count];
+            for (int i = 0; i < count; i++) {
+                positions[i] = i;
+            }
+
+            long prepareTime = Long.MAX_VALUE;
+            long firstPageTime = Long.MAX_VALUE;
+            long pagesTime = Long.MAX_VALUE;
+            long sortTime = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                OfferRanking ranking = new OfferRanking(offers, positions, searchWords);
+                long start = System.nanoTime();
+                ranking.prepare();
+                prepareTime = Math.min(prepareTime, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                ranking.next(PAGE_SIZE);
+                firstPageTime = Math.min(firstPageTime, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (int page = 1; page < PAGES; page++) {
+                    ranking.next(PAGE_SIZE);
+                }
+                pagesTime = Math.min(pagesTime, (System.nanoTime() - start) / (PAGES - 1));
+
+                // All at once: a selection of every matching offer is a full heap sort
+                OfferRanking sorted = new OfferRanking(offers, positions, searchWords);
+                sorted.prepare();
+                start = System.nanoTime();
+                sorted.next(count);
+                sortTime = Math.min(sortTime, System.nanoTime() - start);
+            }
+
+            System.out.printf("%d offers: rate %.2f ms, first page %.3f ms, next page %.3f ms " +
+                            "| all sorted %.2f ms%n",
+                    count, prepareTime / 1e6, firstPageTime / 1e6, pagesTime / 1e6,
+                    sortTime / 1e6);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package de.kathrin.angebote.models;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * The pages of the ranking are the same as sorting all matching offers at once.
+ */
+public class OfferRankingTest {
+
+    @Test
+    public void returnsSameOrderAsFullSort() {
+        Random random = new Random(20);
+        List<Offer> offers = SuffixIndexTest.createOffers(random, 600);
+        List<String> words = SuffixIndexTest.createSearchWords(random, offers, 100);
+
+        for (int round = 0; round < 200; round++) {
+            List<String> searchWords = new ArrayList<>();
+            for (int w = random.nextInt(3); w >= 0; w--) {
+                searchWords.add(words.get(random.nextInt(words.size())));
+            }
+            int[] positions = createPositions(random, offers.size());
+
+            OfferRanking ranking = new OfferRanking(offers, positions, searchWords);
+            List<Offer> ranked = new ArrayList<>();
+            while (ranking.hasNext()) {
+                ranked.addAll(ranking.next(random.nextInt(40) + 1));
+            }
+            assertTrue(ranking.next(10).isEmpty());
+
+            assertEquals(searchWords.toString(), sort(offers, positions, searchWords), ranked);
+        }
+    }
+
+    @Test
+    public void keepsOrderWithoutSearchWords() {
+        List<Offer> offers = SuffixIndexTest.createOffers(new Random(21), 50);
+        int[] positions = {7, 3, 40, 12, 0};
+
+        OfferRanking ranking = new OfferRanking(offers, positions, new ArrayList<String>());
+        List<Offer> ranked = new ArrayList<>(ranking.next(2));
+        ranked.addAll(ranking.next(10));
+
+        assertEquals(Arrays.asList(offers.get(7), offers.get(3), offers.get(40), offers.get(12),
+                offers.get(0)), ranked);
+    }
+
+
+    // HELPER FUNCTIONS
+
+    /**
+     * Random ascending positions of matching offers.
+     */
+    static int[] createPositions(Random random, int count) {
+        int[] positions = new int[count];
+        int size = 0;
+        int share = random.nextInt(100) + 1;
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(100) < share) {
+                positions[size++] = i;
+            }
+        }
+        return Arrays.copyOf(positions, size);
+    }
+
+    /**
+     * Oracle: sort all matching offers by points, title length and position.
+     */
+    private static List<Offer> sort(final List<Offer> offers, int[] positions,
+                                    List<String> searchWords) {
+        final int[] points = new int[offers.size()];
+        List<Integer> sorted = new ArrayList<>();
+        for (int position : positions) {
+            points[position] = getPoints(offers.get(position), searchWords);
+            sorted.add(position);
+        }
+        Collections.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (points[a] != points[b]) {
+                    return points[b] - points[a];
+                }
+                int titleLength = offers.get(a).getTitleKey().length() -
+                        offers.get(b).getTitleKey().length();
+                return titleLength != 0 ? titleLength : a - b;
+            }
+        });
+
+        List<Offer> resultList = new ArrayList<>();
+        for (int position : sorted) {
+            resultList.add(offers.get(position));
+        }
+        return resultList;
+    }
+
+    static int getPoints(Offer offer, List<String> searchWords) {
+        int points = 0;
+        for (String word : searchWords) {
+            if (startsWord(offer.getTitleKey(), word)) {
+                points += 3;
+            } else if (offer.getTitleKey().contains(word)) {
+                points += 2;
+            } else if (startsWord(offer.getDescriptionKey(), word)) {
+                points += 1;
+            }
+        }
+        return points;
+    }
+
+    private static boolean startsWord(String text, String word) {
+        Matcher matcher = Pattern.compile("(^|[^\\p{L}\\p{N}])" + Pattern.quote(word))
+                .matcher(text);
+        return matcher.find();
+    }
+}
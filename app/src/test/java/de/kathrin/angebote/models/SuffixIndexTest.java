@@ -0,0 +1,124 @@
+package de.kathrin.angebote.models;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The sorted suffixes find the same offers as contains, stored suffixes are only used if they
+ * are intact.
+ */
+public class SuffixIndexTest {
+
+    @Test
+    public void findsSameOffersAsContains() {
+        Random random = new Random(19);
+        List<Offer> offers = createOffers(random, 500);
+        SuffixIndex index = new SuffixIndex(offers);
+
+        for (String word : createSearchWords(random, offers, 500)) {
+            assertArrayEquals(word, find(offers, word), index.find(word));
+        }
+    }
+
+    @Test
+    public void restoresStoredSuffixes() {
+        List<Offer> offers = createOffers(new Random(20), 100);
+        SuffixIndex index = new SuffixIndex(offers);
+
+        SuffixIndex restored = SuffixIndex.restore(offers, index.getTextHash(),
+                index.getSuffixes().clone());
+        assertNotNull(restored);
+        for (String word : new String[] {"joghurt", "milch", "e", "xyz", ""}) {
+            assertArrayEquals(word, index.find(word), restored.find(word));
+        }
+    }
+
+    @Test
+    public void rejectsBrokenSuffixes() {
+        List<Offer> offers = createOffers(new Random(21), 100);
+        SuffixIndex index = new SuffixIndex(offers);
+        int[] suffixes = index.getSuffixes();
+
+        int[] outOfRange = suffixes.clone();
+        outOfRange[outOfRange.length / 2] = outOfRange.length;
+        assertNull(SuffixIndex.restore(offers, index.getTextHash(), outOfRange));
+
+        int[] negative = suffixes.clone();
+        negative[0] = -1;
+        assertNull(SuffixIndex.restore(offers, index.getTextHash(), negative));
+
+        int[] twice = suffixes.clone();
+        twice[1] = twice[0];
+        assertNull(SuffixIndex.restore(offers, index.getTextHash(), twice));
+
+        // Other offers
+        assertNull(SuffixIndex.restore(offers.subList(1, offers.size()), index.getTextHash(),
+                suffixes.clone()));
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private static final String[] WORDS = {"Joghurt", "Fruchtjoghurt", "Erdbeer", "Vollmilch",
+            "Milchreis", "Bio", "Äpfel", "Käse", "Gouda", "Hähnchen", "Schenkel", "Müsli",
+            "aus Deutschland", "je 500-g-Packung", "Sorte:", "1 kg = 3,98", "Kl. I", "Œuvre"};
+
+    /**
+     * Offers with titles and descriptions of random words (markup and entities included).
+     */
+    static List<Offer> createOffers(Random random, int count) {
+        List<Offer> offers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            offers.add(new Offer(createText(random, 3), (random.nextInt(2000) + 1) / 100.0,
+                    "<b>" + createText(random, 12) + "</b>&nbsp;" + createText(random, 4),
+                    ""));
+        }
+        return offers;
+    }
+
+    /**
+     * Parts of the normalized texts of the offers, and some words of no offer.
+     */
+    static List<String> createSearchWords(Random random, List<Offer> offers, int count) {
+        List<String> words = new ArrayList<>();
+        while (words.size() < count) {
+            Offer o = offers.get(random.nextInt(offers.size()));
+            String text = random.nextBoolean() ? o.getTitleKey() : o.getDescriptionKey();
+            List<String> textWords = OfferIndex.splitWords(text);
+            String word = textWords.get(random.nextInt(textWords.size()));
+            int start = random.nextInt(word.length());
+            word = word.substring(start, start + 1 + random.nextInt(word.length() - start));
+            words.add(random.nextInt(10) == 0 ? word + "q" : word);
+        }
+        return words;
+    }
+
+    private static String createText(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return text.toString().trim();
+    }
+
+    /**
+     * Oracle: check every offer with contains.
+     */
+    private static int[] find(List<Offer> offers, String word) {
+        int[] result = new int[offers.size()];
+        int count = 0;
+        for (int i = 0; i < offers.size(); i++) {
+            if (offers.get(i).getTitleKey().contains(word) ||
+                    offers.get(i).getDescriptionKey().contains(word)) {
+                result[count++] = i;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
@@ -0,0 +1,100 @@
+package de.kathrin.angebote.models;
+
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Benchmark (run by hand, not part of the unit tests): for 1k to 50k offers, the number of
+ * candidate words the trigrams leave for the edit distance, the time to find the similar words
+ * and the time of the whole search with typing errors.
+ */
+public class TrigramIndexBenchmark {
+
+    private static final int[] OFFER_COUNTS = {1000, 5000, 10000, 50000};
+    private static final int SEARCH_WORDS = 500;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        for (int count : OFFER_COUNTS) {
+            Random random = new Random(count);
+            OfferList offerList = new OfferList();
+            offerList.addAll(OfferIndexBenchmark.createOffers(random, count));
+
+            String[] words = collectWords(offerList);
+            TrigramIndex trigrams = new TrigramIndex(words);
+            String[] searchWords = createSearchWords(random, words);
+
+            long candidates = 0;
+            long similar = 0;
+            for (String searchWord : searchWords) {
+                int maxDistance = TrigramIndex.getMaxDistance(searchWord);
+                candidates += trigrams.findCandidates(searchWord, maxDistance).length;
+                similar += trigrams.findSimilar(searchWord).size();
+            }
+
+            // The first search with typing errors builds the index
+            OfferIndex index = offerList.getIndex();
+            index.searchSimilar(searchWords[0]);
+
+            long findTime = Long.MAX_VALUE;
+            long searchTime = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (String searchWord : searchWords) {
+                    trigrams.findSimilar(searchWord);
+                }
+                findTime = Math.min(findTime, (System.nanoTime() - start) / searchWords.length);
+
+                start = System.nanoTime();
+                for (String searchWord : searchWords) {
+                    index.searchSimilar(searchWord);
+                }
+                searchTime = Math.min(searchTime, (System.nanoTime() - start) / searchWords.length);
+            }
+
+            System.out.printf("%d offers, %d words: %d candidates, %d similar words, " +
+                            "find %.3f ms, search %.3f ms%n",
+                    count, words.length, candidates / searchWords.length,
+                    similar / searchWords.length, findTime / 1e6, searchTime / 1e6);
+        }
+    }
+
+
+    // HELPER FUNCTIONS
+
+    /**
+     * @return  distinct words of the offers' titles and descriptions, sorted
+     */
+    private static String[] collectWords(List<Offer> offers) {
+        TreeSet<String> words = new TreeSet<>();
+        for (Offer o : offers) {
+            words.addAll(OfferIndex.splitWords(o.getTitleKey()));
+            words.addAll(OfferIndex.splitWords(o.getDescriptionKey()));
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /**
+     * Words of the offers with one typing error (a character replaced, left out or doubled).
+     */
+    private static String[] createSearchWords(Random random, String[] words) {
+        String[] searchWords = new String[SEARCH_WORDS];
+        for (int i = 0; i < searchWords.length; i++) {
+            String word = words[random.nextInt(words.length)];
+            int position = random.nextInt(word.length());
+            switch (random.nextInt(3)) {
+                case 0:
+                    word = word.substring(0, position) + 'x' + word.substring(position + 1);
+                    break;
+                case 1:
+                    word = word.substring(0, position) + word.substring(position + 1);
+                    break;
+                default:
+                    word = word.substring(0, position + 1) + word.substring(position);
+            }
+            searchWords[i] = word;
+        }
+        return searchWords;
+    }
+}
@@ -0,0 +1,142 @@
+package de.kathrin.angebote.models;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * The trigram index finds the same words as computing the edit distance to every word.
+ */
+public class TrigramIndexTest {
+
+    @Test
+    public void findsSameWordsAsEditDistance() {
+        Random random = new Random(18);
+        // Few letters, so many words are similar to each other
+        String[] words = createWords(random, 3000, "abcdeg");
+        TrigramIndex index = new TrigramIndex(words);
+
+        for (int round = 0; round < 1000; round++) {
+            String searchWord = random.nextBoolean() ?
+                    edit(random, words[random.nextInt(words.length)]) :
+                    createWord(random, "abcdeg");
+            assertEquals(searchWord, findSimilar(words, searchWord),
+                    toMap(index.findSimilar(searchWord)));
+        }
+    }
+
+    @Test
+    public void findsRepeatedAndShortWords() {
+        String[] words = {"abababababab", "abcd", "axcd", "abcdefgh", "joghurt", "fruchtjoghurt",
+                "kaese", "kase", "ab"};
+        TrigramIndex index = new TrigramIndex(words);
+
+        for (String searchWord : new String[] {"abababababab", "abababaxabab", "abcd", "axcd",
+                "xbcd", "abcdxfgh", "joghrt", "jogurt", "kaes", "ab", "abc"}) {
+            assertEquals(searchWord, findSimilar(words, searchWord),
+                    toMap(index.findSimilar(searchWord)));
+        }
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private static TreeMap<Integer, Integer> toMap(List<TrigramIndex.Match> matches) {
+        TreeMap<Integer, Integer> map = new TreeMap<>();
+        for (TrigramIndex.Match m : matches) {
+            assertNull("word found twice", map.put(m.word, m.distance));
+        }
+        return map;
+    }
+
+    /**
+     * Oracle: edit distance (Levenshtein) of the search word to every beginning of every word.
+     */
+    private static TreeMap<Integer, Integer> findSimilar(String[] words, String searchWord) {
+        int maxDistance = TrigramIndex.getMaxDistance(searchWord);
+        TreeMap<Integer, Integer> map = new TreeMap<>();
+        if (maxDistance == 0) {
+            return map;
+        }
+
+        for (int w = 0; w < words.length; w++) {
+            int distance = prefixDistance(searchWord, words[w]);
+            if (distance <= maxDistance) {
+                map.put(w, distance);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Full matrix of the edit distances, the best one of the last row is the one to the best
+     * beginning of b.
+     */
+    private static int prefixDistance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0) {
+                    d[i][j] = i + j;
+                } else {
+                    d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1),
+                            d[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1));
+                }
+            }
+        }
+        int distance = Integer.MAX_VALUE;
+        for (int j = 0; j <= b.length(); j++) {
+            distance = Math.min(distance, d[a.length()][j]);
+        }
+        return distance;
+    }
+
+    private static String[] createWords(Random random, int count, String letters) {
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < count) {
+            words.add(createWord(random, letters));
+        }
+        return words.toArray(new String[0]);
+    }
+
+    private static String createWord(Random random, String letters) {
+        StringBuilder word = new StringBuilder();
+        int length = random.nextInt(12) + 2;
+        for (int i = 0; i < length; i++) {
+            word.append(letters.charAt(random.nextInt(letters.length())));
+        }
+        return word.toString();
+    }
+
+    /**
+     * Up to two random insertions, deletions or replacements, sometimes cut at the end.
+     */
+    private static String edit(Random random, String word) {
+        StringBuilder edited = new StringBuilder(word);
+        int edits = random.nextInt(3);
+        for (int e = 0; e < edits && edited.length() > 0; e++) {
+            int position = random.nextInt(edited.length());
+            switch (random.nextInt(3)) {
+                case 0:
+                    edited.insert(position, (char) ('a' + random.nextInt(8)));
+                    break;
+                case 1:
+                    edited.deleteCharAt(position);
+                    break;
+                default:
+                    edited.setCharAt(position, (char) ('a' + random.nextInt(8)));
+            }
+        }
+        if (random.nextInt(4) == 0 && edited.length() > 4) {
+            edited.setLength(edited.length() - random.nextInt(3));
+        }
+        return edited.toString();
+    }
+}
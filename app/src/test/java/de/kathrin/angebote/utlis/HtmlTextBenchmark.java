@@ -0,0 +1,66 @@
+package de.kathrin.angebote.utlis;
+
+import java.util.Random;
+
+/**
+ * Benchmark (run by hand, not part of the unit tests): time to convert descriptions into
+ * plain text, for descriptions made of the samples of {@link HtmlTextTest}. The comparison with
+ * Html.fromHtml needs a device, see PlainTextBenchmark of the instrumented tests.
+ */
+public class HtmlTextBenchmark {
+
+    private static final int[] DESCRIPTION_COUNTS = {1000, 10000, 100000};
+    private static final int SAMPLES_PER_DESCRIPTION = 3;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        // Warm up, so the first count is not measured while the code is compiled
+        for (String description : createDescriptions(new Random(0), 100000)) {
+            HtmlText.toPlainText(description);
+        }
+
+        for (int count : DESCRIPTION_COUNTS) {
+            String[] descriptions = createDescriptions(new Random(count), count);
+            long chars = 0;
+            for (String description : descriptions) {
+                chars += description.length();
+            }
+
+            long bestTime = Long.MAX_VALUE;
+            int length = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (String description : descriptions) {
+                    length += HtmlText.toPlainText(description).length();
+                }
+                bestTime = Math.min(bestTime, System.nanoTime() - start);
+            }
+
+            System.out.printf("%d descriptions (%d KB): %.2f ms, %.0f ns per description, " +
+                            "%.0f MB/s (%d)%n",
+                    count, chars * 2 / 1024, bestTime / 1e6, (double) bestTime / count,
+                    chars * 2 / (bestTime / 1e9) / 1e6, length);
+        }
+    }
+
+
+    // HELPER FUNCTIONS
+
+    /**
+     * @param random    source of the samples
+     * @param count     number of descriptions
+     * @return          descriptions, each a few samples one after the other
+     */
+    private static String[] createDescriptions(Random random, int count) {
+        String[] descriptions = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder description = new StringBuilder();
+            for (int s = 0; s < SAMPLES_PER_DESCRIPTION; s++) {
+                description.append(HtmlTextTest.SAMPLES[random.nextInt(
+                        HtmlTextTest.SAMPLES.length)][0]).append(' ');
+            }
+            descriptions[i] = description.toString();
+        }
+        return descriptions;
+    }
+}
@@ -0,0 +1,108 @@
+package de.kathrin.angebote.utlis;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Plain texts of offer markup: tags removed, entities decoded, whitespace collapsed, and
+ * everything that is no markup kept as it is.
+ */
+public class HtmlTextTest {
+
+    // Descriptions ("beschreibung") in the markup of the offer feed, and their plain texts
+    static final String[][] SAMPLES = {
+            {"Sorte: <b>Erdbeer</b>&nbsp;150 g", "Sorte: Erdbeer 150 g"},
+            {"<p>Kl. I</p><p>aus Spanien</p>", "Kl. I aus Spanien"},
+            {"Joghurt mit 3,5 % Fett<br/>je 150-g-Becher<br />(1 kg = 3.27)",
+                    "Joghurt mit 3,5 % Fett je 150-g-Becher (1 kg = 3.27)"},
+            {"&Auml;pfel &amp; Birnen, M&uuml;sli, Wei&szlig;bier",
+                    "Äpfel & Birnen, Müsli, Weißbier"},
+            {"&#252;ber &#xFC;ber &#128512;", "über über 😀"},
+            {"Preis &lt; 1&euro; &quot;Aktion&quot;", "Preis < 1€ \"Aktion\""},
+            {"Erd<b>beer</b><i>joghurt</i>", "Erdbeerjoghurt"},
+            {"<span style=\"color:red\">rot > blau</span>", "rot > blau"},
+            {"<!-- Kommentar --> sichtbar", "sichtbar"},
+            {"Kiste&shy;nware", "Kistenware"},
+            {"  viele   Leer\n\tzeichen  ", "viele Leer zeichen"},
+            {"a < b, a<b", "a < b, a<b"},
+            {"&unbekannt; & &amp", "&unbekannt; & &amp"},
+            {"<ul><li>Eins</li><li>Zwei</li></ul>", "Eins Zwei"},
+            {"Gouda<h3>jung</h3>45 % Fett i. Tr.", "Gouda jung 45 % Fett i. Tr."},
+            {"nichts zu tun", "nichts zu tun"},
+    };
+
+    @Test
+    public void convertsSamples() {
+        for (String[] sample : SAMPLES) {
+            assertEquals(sample[0], sample[1], HtmlText.toPlainText(sample[0]));
+        }
+    }
+
+    @Test
+    public void decodesEntities() {
+        assertEquals("Sorte: Erdbeer 150 g", HtmlText.toPlainText("Sorte: Erdbeer&nbsp;150 g"));
+        assertEquals("Käse & Brot", HtmlText.toPlainText("K&auml;se &amp; Brot"));
+        assertEquals("1,99 €", HtmlText.toPlainText("1,99&nbsp;&euro;"));
+        assertEquals("Trennung", HtmlText.toPlainText("Tren&shy;nung"));
+    }
+
+    @Test
+    public void decodesNumericEntities() {
+        assertEquals("ä ä ä", HtmlText.toPlainText("&#228; &#xe4; &#XE4;"));
+        assertEquals("a b", HtmlText.toPlainText("a&#160;b"));
+        assertEquals("Trennung", HtmlText.toPlainText("Tren&#173;nung"));
+        assertEquals("😀", HtmlText.toPlainText("&#x1F600;"));
+    }
+
+    @Test
+    public void keepsInvalidEntities() {
+        assertEquals("a &unknown; b", HtmlText.toPlainText("a &unknown; b"));
+        assertEquals("a &#xD800; b", HtmlText.toPlainText("a &#xD800; b"));
+        assertEquals("a &#xDFFF; b", HtmlText.toPlainText("a &#xDFFF; b"));
+        assertEquals("a &#x110000; b", HtmlText.toPlainText("a &#x110000; b"));
+        assertEquals("a &#0; b", HtmlText.toPlainText("a &#0; b"));
+        assertEquals("a &#; b", HtmlText.toPlainText("a &#; b"));
+        assertEquals("a &#12z; b", HtmlText.toPlainText("a &#12z; b"));
+        assertEquals("Salz & Pfeffer", HtmlText.toPlainText("Salz & Pfeffer"));
+    }
+
+    @Test
+    public void separatesWordsAtBreaks() {
+        assertEquals("Zeile 1 Zeile 2", HtmlText.toPlainText("Zeile 1<br>Zeile 2"));
+        assertEquals("a b", HtmlText.toPlainText("a<br/>b"));
+        assertEquals("Absatz 1 Absatz 2", HtmlText.toPlainText("<p>Absatz 1</p><P>Absatz 2</P>"));
+        assertEquals("eins zwei", HtmlText.toPlainText("<ul><li>eins</li><li>zwei</li></ul>"));
+    }
+
+    @Test
+    public void removesInlineTags() {
+        assertEquals("Sorte: Erdbeer", HtmlText.toPlainText("Sorte: <b>Erd</b>beer"));
+        assertEquals("Link", HtmlText.toPlainText("<a href=\"x?a>b\">Link</a>"));
+        assertEquals("ab", HtmlText.toPlainText("a<!-- <br> -->b"));
+    }
+
+    @Test
+    public void keepsStrayLessThan() {
+        assertEquals("1 < 2", HtmlText.toPlainText("1 < 2"));
+        assertEquals("a <", HtmlText.toPlainText("a <"));
+        assertEquals("a <b", HtmlText.toPlainText("a <b"));
+    }
+
+    @Test
+    public void collapsesWhitespace() {
+        assertEquals("a b c", HtmlText.toPlainText("  a \t\n b\u00a0 <br> c  "));
+        assertEquals("a b", HtmlText.toPlainText("a &nbsp; b"));
+        assertEquals("a b", HtmlText.toPlainText("a\u00a0\u00a0b"));
+        assertEquals("", HtmlText.toPlainText(" \n "));
+        assertEquals("", HtmlText.toPlainText("<br>"));
+    }
+
+    @Test
+    public void returnsUnchangedMarkup() {
+        String plain = "Erdbeer Joghurt 150 g";
+        assertSame(plain, HtmlText.toPlainText(plain));
+        assertSame("", HtmlText.toPlainText(""));
+        assertNull(HtmlText.toPlainText(null));
+    }
+}
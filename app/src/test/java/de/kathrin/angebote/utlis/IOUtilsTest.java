@@ -0,0 +1,131 @@
+package de.kathrin.angebote.utlis;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static de.kathrin.angebote.utlis.Strings.UTF8;
+import static org.junit.Assert.*;
+
+/**
+ * Requests against a local stand-in of the offer server: the validators of a response are
+ * sent with the next request, which is answered with 304 then.
+ */
+public class IOUtilsTest {
+
+    private static final String ETAG = "\"offers-1\"";
+    private static final String LAST_MODIFIED = "Mon, 12 Oct 2026 06:00:00 GMT";
+    private static final String BODY = "{\"docs\":[]}";
+
+    private HttpServer server;
+
+    // If-None-Match header of every request received (null if there was none)
+    private final List<String> receivedETags = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/offers", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String eTag = exchange.getRequestHeaders().getFirst("If-None-Match");
+                receivedETags.add(eTag);
+
+                if (ETAG.equals(eTag)) {
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    byte[] body = BODY.getBytes(UTF8);
+                    exchange.getResponseHeaders().add("ETag", ETAG);
+                    exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream stream = exchange.getResponseBody();
+                    stream.write(body);
+                    stream.close();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void revalidatesWithValidators() throws IOException {
+        CacheValidators validators = new CacheValidators();
+
+        // Full response, its validators are kept
+        assertEquals(BODY, IOUtils.requestFromServer(getUrl(), "GET", null, validators,
+                createStringReader()));
+        assertFalse(validators.isNotModified());
+        assertEquals(ETAG, validators.getETag());
+        assertEquals(LAST_MODIFIED, validators.getLastModified());
+
+        // Not modified, nothing to read
+        assertNull(IOUtils.requestFromServer(getUrl(), "GET", null, validators,
+                createStringReader()));
+        assertTrue(validators.isNotModified());
+        assertEquals(ETAG, validators.getETag());
+
+        assertEquals(2, receivedETags.size());
+        assertNull(receivedETags.get(0));
+        assertEquals(ETAG, receivedETags.get(1));
+    }
+
+    @Test
+    public void requestsString() throws IOException {
+        // Like the market search, the connection is given back after the response is read
+        for (int i = 0; i < 3; i++) {
+            assertEquals(BODY + "\n", IOUtils.requestFromServer(getUrl(), "GET", null));
+        }
+    }
+
+    @Test
+    public void requestsFullResponseWithoutValidators() throws IOException {
+        // Validators of other offers (e.g. a stored file that is not readable anymore)
+        CacheValidators validators = new CacheValidators("\"other\"", null);
+        assertEquals(BODY, IOUtils.requestFromServer(getUrl(), "GET", null, validators,
+                createStringReader()));
+        assertFalse(validators.isNotModified());
+        assertEquals(ETAG, validators.getETag());
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/offers";
+    }
+
+    static IOUtils.StreamHandler<String> createStringReader() {
+        return new IOUtils.StreamHandler<String>() {
+            @Override
+            public String handleStream(InputStream stream) throws IOException {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                int count;
+                while ((count = stream.read(buffer)) != -1) {
+                    content.write(buffer, 0, count);
+                }
+                return content.toString(UTF8);
+            }
+        };
+    }
+}
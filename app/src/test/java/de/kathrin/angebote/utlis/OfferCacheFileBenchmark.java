@@ -0,0 +1,65 @@
+package de.kathrin.angebote.utlis;
+
+import java.io.File;
+import java.io.IOException;
+
+import de.kathrin.angebote.models.Offer;
+import de.kathrin.angebote.models.OfferList;
+
+/**
+ * Benchmark (run by hand, not part of the unit tests): size and restore time of raw and
+ * compressed offer snapshots, it decides when OfferCacheManager compresses.
+ */
+public class OfferCacheFileBenchmark {
+
+    private static final int[] OFFER_COUNTS = {300, 900, 2500};
+    private static final int WARM_UP = 20;
+    private static final int REPETITIONS = 50;
+
+    public static void main(String[] args) throws IOException {
+        for (int count : OFFER_COUNTS) {
+            OfferList offerList = OfferCacheFileTest.createOffers(count, count);
+            File raw = OfferCacheFileTest.write(offerList, false);
+            File compressed = OfferCacheFileTest.write(offerList, true);
+
+            for (int i = 0; i < WARM_UP; i++) {
+                readAll(raw);
+                readAll(compressed);
+            }
+            long rawTime = timeRestore(raw);
+            long compressedTime = timeRestore(compressed);
+
+            System.out.printf("%d offers: raw %d KB, restore %.2f ms | compressed %d KB (%d %%), " +
+                            "restore %.2f ms%n",
+                    count, raw.length() / 1024, rawTime / 1e6,
+                    compressed.length() / 1024, 100 * compressed.length() / raw.length(),
+                    compressedTime / 1e6);
+
+            raw.delete();
+            compressed.delete();
+        }
+    }
+
+
+    // HELPER FUNCTIONS
+
+    /**
+     * @param file  snapshot file
+     * @return      average time (ns) to restore it and read every text
+     */
+    private static long timeRestore(File file) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < REPETITIONS; i++) {
+            readAll(file);
+        }
+        return (System.nanoTime() - start) / REPETITIONS;
+    }
+
+    private static int readAll(File file) throws IOException {
+        int length = 0;
+        for (Offer o : OfferCacheFile.map(file)) {
+            length += o.getTitle().length() + o.getDescription().length();
+        }
+        return length;
+    }
+}
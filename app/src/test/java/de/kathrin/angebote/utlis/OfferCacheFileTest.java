@@ -0,0 +1,132 @@
+package de.kathrin.angebote.utlis;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Date;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import de.kathrin.angebote.models.Offer;
+import de.kathrin.angebote.models.OfferList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Offer snapshots written raw and compressed are restored the same way, compressed ones are
+ * much smaller. Their restore time is compared by OfferCacheFileBenchmark.
+ */
+public class OfferCacheFileTest {
+
+    @Test
+    public void restoresRawFile() throws IOException {
+        assertRestored(createOffers(500, 1), false);
+    }
+
+    @Test
+    public void restoresCompressedFile() throws IOException {
+        assertRestored(createOffers(500, 2), true);
+    }
+
+    @Test
+    public void rejectsOverflowingOfferCount() throws IOException {
+        File file = write(createOffers(10, 3), false);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            // Times the entry size it overflows an int to a few bytes
+            randomAccessFile.seek(OfferCacheFile.HEADER_OFFER_COUNT);
+            randomAccessFile.writeInt((int) ((1L << 32) / OfferCacheFile.ENTRY_SIZE + 1));
+        } finally {
+            randomAccessFile.close();
+        }
+
+        try {
+            OfferCacheFile.map(file);
+            fail("Damaged offer count accepted");
+        } catch (IOException e) {
+            // Expected
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void compressesSnapshot() throws IOException {
+        // OfferCacheManager compresses under a short budget, it must pay off for a market
+        OfferList offerList = createOffers(900, 900);
+        File raw = write(offerList, false);
+        File compressed = write(offerList, true);
+
+        assertTrue(compressed.length() < raw.length() / 3);
+
+        raw.delete();
+        compressed.delete();
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private static void assertRestored(OfferList offerList, boolean compressed)
+            throws IOException {
+        File file = write(offerList, compressed);
+        OfferList restored = OfferCacheFile.map(file);
+
+        assertEquals(offerList.size(), restored.size());
+        assertEquals(offerList.getAvailableUntilTime(), restored.getAvailableUntilTime());
+        for (int i = 0; i < offerList.size(); i++) {
+            assertEquals(offerList.get(i).getTitle(), restored.get(i).getTitle());
+            assertEquals(offerList.get(i).getDescription(), restored.get(i).getDescription());
+            assertEquals(offerList.get(i).getImageUrl(), restored.get(i).getImageUrl());
+            assertEquals(offerList.get(i).getPrice(), restored.get(i).getPrice());
+        }
+        file.delete();
+    }
+
+    static File write(OfferList offerList, boolean compressed) throws IOException {
+        File file = File.createTempFile("offers", ".bin");
+        OutputStream stream = new FileOutputStream(file);
+        try {
+            if (compressed) {
+                stream = new GZIPOutputStream(stream, 8192);
+            }
+            OfferCacheFile.write(stream, offerList, OfferStore.createIds(offerList), 1);
+        } finally {
+            stream.close();
+        }
+        return file;
+    }
+
+    /**
+     * Offers like the ones of the server: German titles, descriptions of about 300 characters
+     * and image URLs of the same host.
+     */
+    static OfferList createOffers(int count, long seed) {
+        String[] words = {"Joghurt", "Erdbeer", "Vollmilch", "Bio", "Äpfel", "Kl. I",
+                "aus Deutschland", "je 500-g-Packung", "Sorte", "Käse", "würzig", "gereift",
+                "1 kg =", "Frische", "Aktion", "Gemüse", "Hähnchen", "Schenkel", "Müsli"};
+        Random random = new Random(seed);
+
+        OfferList offerList = new OfferList();
+        offerList.setAvailableFrom(new Date(1600000000000L));
+        offerList.setAvailableUntil(new Date(1600600000000L));
+
+        for (int i = 0; i < count; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int w = 0; w < 3; w++) {
+                title.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            StringBuilder description = new StringBuilder();
+            while (description.length() < 300) {
+                description.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            offerList.add(new Offer(title.toString().trim(), (random.nextInt(2000) + 1) / 100.0,
+                    description.toString().trim(),
+                    "https://www.edeka.de/media/01/angebote/" + random.nextInt(100000) + ".jpg"));
+        }
+        return offerList;
+    }
+}
@@ -0,0 +1,93 @@
+package de.kathrin.angebote.utlis;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import de.kathrin.angebote.models.Offer;
+import de.kathrin.angebote.models.OfferDiff;
+
+import static org.junit.Assert.*;
+
+/**
+ * Change records are read back as they were written, also with texts above the 64 KB of
+ * writeUTF and offers without a price. A record that was cut off is ignored.
+ */
+public class OfferDeltaFileTest {
+
+    private static final long GENERATION = 42;
+
+    @Test
+    public void restoresRecords() throws IOException {
+        OfferDiff diff = createDiff();
+
+        List<OfferDiff> restored = OfferDeltaFile.read(createFile(diff), GENERATION);
+
+        assertEquals(1, restored.size());
+        assertEquals(diff.getAvailableUntil(), restored.get(0).getAvailableUntil());
+        assertEquals(diff.getRemovedIds(), restored.get(0).getRemovedIds());
+        assertEquals(diff.getAddedIds(), restored.get(0).getAddedIds());
+        assertEquals(diff.getAddedPositions(), restored.get(0).getAddedPositions());
+        assertEquals(diff.getChangedIds(), restored.get(0).getChangedIds());
+        assertOffers(diff.getAdded(), restored.get(0).getAdded());
+        assertOffers(diff.getChanged(), restored.get(0).getChanged());
+    }
+
+    @Test
+    public void ignoresIncompleteRecord() throws IOException {
+        byte[] file = createFile(createDiff());
+        byte[] record = OfferDeltaFile.encodeRecord(createDiff());
+
+        // Second record cut off in the middle of the long description
+        byte[] cutOff = Arrays.copyOf(file, file.length + record.length / 2);
+        System.arraycopy(record, 0, cutOff, file.length, record.length / 2);
+
+        assertEquals(1, OfferDeltaFile.read(cutOff, GENERATION).size());
+    }
+
+    @Test
+    public void ignoresFileOfOtherSnapshot() throws IOException {
+        assertNull(OfferDeltaFile.read(createFile(createDiff()), GENERATION + 1));
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private static void assertOffers(List<Offer> expected, List<Offer> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTitle(), actual.get(i).getTitle());
+            assertEquals(expected.get(i).getPrice(), actual.get(i).getPrice());
+            assertEquals(expected.get(i).getDescription(), actual.get(i).getDescription());
+            assertEquals(expected.get(i).getImageUrl(), actual.get(i).getImageUrl());
+        }
+    }
+
+    private static byte[] createFile(OfferDiff diff) throws IOException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        OfferDeltaFile.writeHeader(file, GENERATION);
+        file.write(OfferDeltaFile.encodeRecord(diff));
+        return file.toByteArray();
+    }
+
+    /**
+     * Changes with an offer without price and one with a description of 100 000 umlauts
+     * (200 000 bytes in UTF-8).
+     */
+    private static OfferDiff createDiff() {
+        char[] umlauts = new char[100000];
+        Arrays.fill(umlauts, 'ä');
+
+        OfferDiff diff = new OfferDiff(new Date(1600000000000L), new Date(1600600000000L));
+        diff.addRemoved(7);
+        diff.addAdded(1, 0, new Offer("Joghurt", null, "Sorte: Erdbeer",
+                "https://www.edeka.de/media/01/angebote/1.jpg"));
+        diff.addChanged(2, new Offer("Käse", 1.99, new String(umlauts),
+                "https://www.edeka.de/media/01/angebote/2.jpg"));
+        return diff;
+    }
+}
@@ -0,0 +1,168 @@
+package de.kathrin.angebote.utlis;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.kathrin.angebote.utlis.Strings.UTF8;
+import static org.junit.Assert.*;
+
+/**
+ * Many callers requesting the same key at the same time cause one request to a local stand-in
+ * server, and all of them get the same result. Interrupting one caller does not stop the
+ * request for the others.
+ */
+public class SingleFlightTest {
+
+    private static final int CALLERS = 20;
+    private static final String BODY = "{\"docs\":[]}";
+
+    private HttpServer server;
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    // The server only answers when the test lets it, so all callers are waiting by then
+    private final CountDownLatch answer = new CountDownLatch(1);
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/offers", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requestCount.incrementAndGet();
+                try {
+                    answer.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                byte[] body = BODY.getBytes(UTF8);
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream stream = exchange.getResponseBody();
+                stream.write(body);
+                stream.close();
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void makesOneRequestForAllCallers() throws InterruptedException {
+        SingleFlight<String> singleFlight = new SingleFlight<>(Executors.newCachedThreadPool());
+        Caller[] callers = startCallers(singleFlight);
+
+        awaitWaiting(callers);
+        answer.countDown();
+
+        for (Caller caller : callers) {
+            caller.join(10000);
+            assertNull(caller.failure);
+            // The same instance, not only an equal result
+            assertSame(callers[0].result, caller.result);
+        }
+        assertEquals(BODY, callers[0].result);
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    public void keepsRequestForOthersWhenCallerIsInterrupted() throws InterruptedException {
+        SingleFlight<String> singleFlight = new SingleFlight<>(Executors.newCachedThreadPool());
+        Caller[] callers = startCallers(singleFlight);
+
+        awaitWaiting(callers);
+        callers[0].interrupt();
+        callers[0].join(10000);
+        assertTrue(callers[0].failure instanceof InterruptedIOException);
+
+        answer.countDown();
+        for (int i = 1; i < callers.length; i++) {
+            callers[i].join(10000);
+            assertNull(callers[i].failure);
+            assertEquals(BODY, callers[i].result);
+        }
+        assertEquals(1, requestCount.get());
+    }
+
+
+    // HELPER FUNCTIONS
+
+    /**
+     * Start the callers, all of them request the same key.
+     */
+    private Caller[] startCallers(SingleFlight<String> singleFlight) {
+        final String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/offers";
+        Callable<String> request = new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                return IOUtils.requestFromServer(url, "GET", null, null,
+                        IOUtilsTest.createStringReader());
+            }
+        };
+
+        Caller[] callers = new Caller[CALLERS];
+        for (int i = 0; i < callers.length; i++) {
+            callers[i] = new Caller(singleFlight, request);
+            callers[i].start();
+        }
+        return callers;
+    }
+
+    /**
+     * Wait until every caller waits for the result (the request can not be done before the
+     * server answers, so none of them started a second request).
+     */
+    private static void awaitWaiting(Caller[] callers) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        for (Caller caller : callers) {
+            while (caller.getState() != Thread.State.WAITING) {
+                assertTrue("Caller does not wait", System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private static class Caller extends Thread {
+
+        private final SingleFlight<String> singleFlight;
+        private final Callable<String> request;
+
+        volatile String result;
+        volatile IOException failure;
+
+        Caller(SingleFlight<String> singleFlight, Callable<String> request) {
+            this.singleFlight = singleFlight;
+            this.request = request;
+        }
+
+        @Override
+        public void run() {
+            try {
+                result = singleFlight.run("market", request);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+}
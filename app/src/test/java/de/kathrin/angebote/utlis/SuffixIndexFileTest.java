@@ -0,0 +1,87 @@
+package de.kathrin.angebote.utlis;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import de.kathrin.angebote.models.Offer;
+import de.kathrin.angebote.models.SuffixIndex;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stored suffixes take three bytes each for the texts of a market and are restored for the
+ * same offers only.
+ */
+public class SuffixIndexFileTest {
+
+    @Test
+    public void restoresSuffixes() throws IOException {
+        // About 100 000 characters, more than two bytes can address
+        List<Offer> offers = OfferCacheFileTest.createOffers(300, 19);
+        SuffixIndex suffixIndex = new SuffixIndex(offers);
+        int length = suffixIndex.getSuffixes().length;
+        assertTrue(length > 0xffff);
+
+        File file = write(suffixIndex);
+        assertEquals(SuffixIndexFile.HEADER_SIZE + 3L * length, file.length());
+
+        SuffixIndex restored = SuffixIndexFile.read(file, offers);
+        assertArrayEquals(suffixIndex.getSuffixes(), restored.getSuffixes());
+        assertArrayEquals(suffixIndex.find("joghurt"), restored.find("joghurt"));
+
+        // Other offers
+        assertNull(SuffixIndexFile.read(file, offers.subList(1, offers.size())));
+        file.delete();
+    }
+
+    @Test
+    public void restoresFewSuffixes() throws IOException {
+        List<Offer> offers = OfferCacheFileTest.createOffers(1, 20);
+        SuffixIndex suffixIndex = new SuffixIndex(offers);
+
+        File file = write(suffixIndex);
+        assertEquals(SuffixIndexFile.HEADER_SIZE + 2L * suffixIndex.getSuffixes().length,
+                file.length());
+        assertArrayEquals(suffixIndex.getSuffixes(),
+                SuffixIndexFile.read(file, offers).getSuffixes());
+        file.delete();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsCutOffFile() throws IOException {
+        List<Offer> offers = OfferCacheFileTest.createOffers(20, 21);
+        File file = write(new SuffixIndex(offers));
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(file.length() - 1);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        try {
+            SuffixIndexFile.read(file, offers);
+        } finally {
+            file.delete();
+        }
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private static File write(SuffixIndex suffixIndex) throws IOException {
+        File file = File.createTempFile("offers", ".sfx");
+        OutputStream stream = new FileOutputStream(file);
+        try {
+            SuffixIndexFile.write(stream, suffixIndex);
+        } finally {
+            stream.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,109 @@
+package de.kathrin.angebote.utlis;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import de.kathrin.angebote.models.Offer;
+import de.kathrin.angebote.models.OfferIndex;
+import de.kathrin.angebote.models.OfferList;
+
+import static org.junit.Assert.*;
+
+/**
+ * The automaton finds the same offers and products as checking every word of every product
+ * with contains.
+ */
+public class WatchlistMatcherTest {
+
+    // Whole words, parts of (compound) words, overlapping words and words of no offer
+    private static final String[] PRODUCT_WORDS = {"Joghurt", "ghurt", "Erdbeer", "milch",
+            "Vollmilch", "Bio", "Äpfel", "Käse", "kas", "Hähnchen", "Schenkel", "enkel",
+            "Müsli", "Deutschland", "500-g", "Banane", "Kaffee", "e", "rt er", "frische aktion"};
+
+    @Test
+    public void findsSameOffersAsContains() {
+        Random random = new Random(7);
+        OfferList offers = OfferCacheFileTest.createOffers(1000, 7);
+
+        for (int round = 0; round < 50; round++) {
+            List<String> products = createProducts(random);
+            WatchlistMatcher matcher = new WatchlistMatcher(products);
+
+            List<Offer> expected = new ArrayList<>();
+            for (Offer o : offers) {
+                if (!findProducts(products, o).isEmpty()) {
+                    expected.add(o);
+                }
+            }
+            assertEquals(products.toString(), expected, matcher.findOffers(offers));
+        }
+    }
+
+    @Test
+    public void findsSameProductsAsContains() {
+        Random random = new Random(8);
+        OfferList offers = OfferCacheFileTest.createOffers(300, 8);
+
+        for (int round = 0; round < 50; round++) {
+            List<String> products = createProducts(random);
+            WatchlistMatcher matcher = new WatchlistMatcher(products);
+
+            for (Offer o : offers) {
+                assertEquals(products + " in " + o, findProducts(products, o),
+                        matcher.findProducts(o));
+            }
+        }
+    }
+
+    @Test
+    public void matchesWordsOfTitleAndDescription() {
+        WatchlistMatcher matcher = new WatchlistMatcher(Arrays.asList(
+                "Erdbeer Joghurt", "Joghurt Banane", "JOGHURT", "", "Käse"));
+        Offer offer = new Offer("Fruchtjoghurt", 0.99, "Sorte: Erdbeer, 150 g", "");
+
+        assertEquals(Arrays.asList("Erdbeer Joghurt", "JOGHURT"), matcher.findProducts(offer));
+        assertTrue(new WatchlistMatcher(new ArrayList<String>())
+                .findOffers(Arrays.asList(offer)).isEmpty());
+    }
+
+
+    // HELPER FUNCTIONS
+
+    private static List<String> createProducts(Random random) {
+        List<String> products = new ArrayList<>();
+        int count = random.nextInt(8) + 1;
+        for (int p = 0; p < count; p++) {
+            StringBuilder product = new StringBuilder();
+            int words = random.nextInt(3) + 1;
+            for (int w = 0; w < words; w++) {
+                product.append(PRODUCT_WORDS[random.nextInt(PRODUCT_WORDS.length)]).append(' ');
+            }
+            products.add(product.toString().trim());
+        }
+        return products;
+    }
+
+    /**
+     * Oracle: a product matches if every one of its words is contained in the title or the
+     * description.
+     */
+    private static List<String> findProducts(List<String> products, Offer offer) {
+        List<String> resultList = new ArrayList<>();
+        for (String product : products) {
+            List<String> words = OfferIndex.splitWords(SearchNormalizer.normalize(product));
+            boolean matches = !words.isEmpty();
+            for (String word : words) {
+                matches &= offer.getTitleKey().contains(word) ||
+                        offer.getDescriptionKey().contains(word);
+            }
+            if (matches) {
+                resultList.add(product);
+            }
+        }
+        return resultList;
+    }
+}